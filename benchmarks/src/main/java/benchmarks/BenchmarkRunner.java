@@ -0,0 +1,87 @@
+package benchmarks;
+
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import util.DataWriter;
+import util.Statistics;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs the benchmarks and writes the results in the same CSV format as the analysis.
+ * One file is written for every combination of method and density, named
+ * {@code <prefix>-<method>-<density>.csv}, with one line per dimension.
+ * The mixed sparse-dense methods add the density of their dense operand: {@code <prefix>-SD-<density>-<dense density>.csv}.
+ * The prefix is read from the {@code benchmarks.output} system property.
+ * <p>
+ * All the usual JMH command line options are accepted.
+ * With {@code -prof gc}, the allocated bytes column holds the bytes allocated by each operation.
+ * The JMH profiler does not report the garbage collections of an operation, so those columns are left empty (NaN).
+ */
+public class BenchmarkRunner {
+
+    private static final String OUTPUT_PROPERTY = "benchmarks.output";
+    private static final String DEFAULT_OUTPUT = "jmh";
+    private static final double CONFIDENCE = 0.95;
+    private static final List<String> MIXED_METHODS = Arrays.asList("SD", "DS");
+    /** The secondary result of the JMH gc profiler holding the bytes allocated by each operation. */
+    private static final String ALLOCATION_RESULT = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .include(MultiplicationBenchmark.class.getSimpleName())
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        export(results, System.getProperty(OUTPUT_PROPERTY, DEFAULT_OUTPUT));
+    }
+
+    /** Converts the statistics JMH collected over all measurement iterations of a benchmark. */
+    private static Statistics statistics(RunResult result) {
+        org.openjdk.jmh.util.Statistics jmh = result.getPrimaryResult().getStatistics();
+        double[] interval = jmh.getConfidenceIntervalAt(CONFIDENCE);
+        Result allocation = result.getSecondaryResults().get(ALLOCATION_RESULT);
+        double allocatedBytes = allocation == null ? Double.NaN : allocation.getScore();
+        return new Statistics(jmh.getMean(), jmh.getPercentile(50), jmh.getPercentile(90), jmh.getPercentile(99),
+                jmh.getStandardDeviation(), interval[0], interval[1], jmh.getN(),
+                allocatedBytes, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Groups the results into series of the same method and density and writes each series to its own file.
+     * Within a series the points are ordered by dimension, so the first point is the smallest matrix.
+     *
+     * @param results the results of the benchmarks
+     * @param prefix  the start of the names of the files
+     */
+    private static void export(Collection<RunResult> results, String prefix) {
+        Map<String, TreeMap<Integer, Statistics>> series = new TreeMap<>();
+        for (RunResult result : results) {
+            String method = result.getParams().getParam("method");
+            String density = result.getParams().getParam("density");
+            if (MIXED_METHODS.contains(method)) density += "-" + result.getParams().getParam("denseDensity");
+            int dimension = Integer.parseInt(result.getParams().getParam("dimension"));
+            series.computeIfAbsent(method + "-" + density, k -> new TreeMap<>()).put(dimension, statistics(result));
+        }
+
+        for (Map.Entry<String, TreeMap<Integer, Statistics>> entry : series.entrySet()) {
+            DataWriter writer = new DataWriter(prefix + "-" + entry.getKey() + ".csv");
+            boolean first = true;
+            for (Map.Entry<Integer, Statistics> point : entry.getValue().entrySet()) {
+                if (first) writer.writeFirstDP(point.getValue(), point.getKey());
+                else writer.writeDP(point.getValue(), point.getKey());
+                first = false;
+            }
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package benchmarks;
+
+import matrices.IntMatrix;
+import matrices.SparseMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static matrices.IntMatrix.createRandom;
+import static matrices.SparseMatrix.createRandomSparse;
+import static util.CommonlyUsed.DEFAULT_SEED;
+
+/**
+ * Measures a single multiplication of two random matrices.
+ * The method names are the short names accepted by the analysis (see main.DataGenerator).
+ * The operands are created once per trial, so their generation is not measured.
+ * <p>
+ * The parameters and the warm-up can be changed on the command line,
+ * e.g. {@code -p method=BM,CSR -p dimension=500 -wi 5 -i 10 -f 3}.
+ * The mixed methods SD (sparse times dense) and DS (dense times sparse) take the density of their
+ * sparse operand from density and of their dense operand from denseDensity, so density pairs are chosen with
+ * e.g. {@code -p method=SD,DS -p density=0.001,0.01 -p denseDensity=0.5,1}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 2, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class MultiplicationBenchmark {
+
+    @Param({"BM", "ON", "TM", "PM", "SW", "VM", "CSR", "PCSR", "SpGEMM", "SD", "DS"})
+    public String method;
+
+    @Param({"100", "200", "400"})
+    public int dimension;
+
+    @Param({"0.01", "0.1", "1"})
+    public double density;
+
+    /** The density of the dense operand of SD and DS; the other methods ignore it. */
+    @Param({"1"})
+    public double denseDensity;
+
+    private IntMatrix denseA, denseB;
+    private SparseMatrix sparseA, sparseB;
+
+    @Setup(Level.Trial)
+    public void createOperands() {
+        switch (method) {
+            case "CSR":
+            case "PCSR":
+            case "SpGEMM": {
+                sparseA = createRandomSparse(dimension, density, DEFAULT_SEED);
+                sparseB = createRandomSparse(dimension, density, DEFAULT_SEED + 1);
+                break;
+            }
+            case "SD": {
+                sparseA = createRandomSparse(dimension, density, DEFAULT_SEED);
+                denseB = createRandom(dimension, denseDensity, DEFAULT_SEED + 1);
+                break;
+            }
+            case "DS": {
+                denseA = createRandom(dimension, denseDensity, DEFAULT_SEED);
+                sparseB = createRandomSparse(dimension, density, DEFAULT_SEED + 1);
+                break;
+            }
+            default: {
+                denseA = createRandom(dimension, density, DEFAULT_SEED);
+                denseB = createRandom(dimension, density, DEFAULT_SEED + 1);
+            }
+        }
+    }
+
+    @Benchmark
+    public void multiply(Blackhole blackhole) {
+        switch (method) {
+            case "BM": {
+                blackhole.consume(IntMatrix.basicMultiplication(denseA, denseB));
+                break;
+            }
+            case "ON": {
+                blackhole.consume(IntMatrix.minorOptimizationMultiplication(denseA, denseB));
+                break;
+            }
+            case "TM": {
+                blackhole.consume(IntMatrix.tiledMultiplication(denseA, denseB));
+                break;
+            }
+            case "PM": {
+                blackhole.consume(IntMatrix.parallelMultiplication(denseA, denseB));
+                break;
+            }
+            case "SW": {
+                blackhole.consume(IntMatrix.strassenMultiplication(denseA, denseB));
+                break;
+            }
+            case "VM": {
+                blackhole.consume(IntMatrix.vectorMultiplication(denseA, denseB));
+                break;
+            }
+            case "CSR": {
+                blackhole.consume(SparseMatrix.multiply(sparseA, sparseB));
+                break;
+            }
+            case "PCSR": {
+                blackhole.consume(SparseMatrix.parallelMultiply(sparseA, sparseB));
+                break;
+            }
+            case "SpGEMM": {
+                blackhole.consume(SparseMatrix.sparseMultiply(sparseA, sparseB));
+                break;
+            }
+            case "SD": {
+                blackhole.consume(SparseMatrix.multiply(sparseA, denseB));
+                break;
+            }
+            case "DS": {
+                blackhole.consume(SparseMatrix.multiply(denseA, sparseB));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown method: " + method);
+        }
+    }
+}
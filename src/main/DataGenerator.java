@@ -1,31 +1,131 @@
 package main;
 
+import matrices.AutoMultiplication;
+import matrices.BsrMatrix;
+import matrices.DistributedMultiplication;
+import matrices.EllMatrix;
 import matrices.IntMatrix;
+import matrices.KernelEvent;
+import matrices.MappedIntMatrix;
+import matrices.MappedSparseMatrix;
+import matrices.MatrixChain;
+import matrices.SellMatrix;
 import matrices.SparseMatrix;
+import matrices.SparseMatrixBuilder;
+import util.DataWriter;
+import util.Measurement;
+import util.Statistics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
 
 import static java.lang.System.nanoTime;
 import static matrices.IntMatrix.*;
 import static matrices.SparseMatrix.createRandomSparse;
-import static util.DataWriter.writeDP;
-import static util.DataWriter.writeFirstDP;
+import static util.CommonlyUsed.print;
+import static util.Logger.log;
 import static util.ProgressBar.formatBar;
 
 class DataGenerator {
 
+    /** The leaf sizes compared by {@link DataGenerator#genCrossoverData} are multiples of this. */
+    private static final int CROSSOVER_STEP = 16;
+
+    /** The file holding the crossover densities used by the automatic kernel selection. */
+    private static final Path AUTO_PROFILE = Paths.get("kernel-profile.properties");
+
+    /** The automatic kernel selection, loaded (or calibrated) the first time it is needed. */
+    private static AutoMultiplication auto = null;
+
+    /** The adaptive mode never makes more runs than this for a single data point. */
+    private static final int MAX_ADAPTIVE_RUNS = 10_000;
+    /**
+     * The adaptive mode does not judge the confidence interval of fewer runs than this;
+     * the bootstrap interval of one or two runs is (close to) zero wide.
+     */
+    private static final int MIN_ADAPTIVE_RUNS = 10;
+
+    /**
+     * The widest acceptable confidence interval (relative to the mean) in the adaptive mode.
+     * The adaptive mode is off when this is 0.
+     */
+    private static double adaptiveTarget = 0;
+
+    /** The longest time (in nanoseconds) the adaptive mode spends on a single data point. */
+    private static long adaptiveBudget = Long.MAX_VALUE;
+
+    /** The number of matrix-vector products made by a single run of the iterative workloads. */
+    private static int iterations = 100;
+
+    /**
+     * The density of the dense operand of the mixed sparse-dense multiplications.
+     * The density of the data point applies to the sparse operand.
+     */
+    private static double denseDensity = 1;
+
+    /** The number of workers on each side of the grid of the distributed multiplications. */
+    private static int gridSize = 2;
+
+    /** The workers of the distributed multiplications, started the first time they are needed. */
+    private static DistributedMultiplication cluster = null;
+
+    /** The pre-generated inputs, or null to generate fresh random inputs for every run. */
+    private static InputCorpus corpus = null;
+
+    /** The number of threads given to the parallel multiplication. */
+    private static int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Returns operand k of a run as a dense matrix: from the corpus if there is one, or else freshly generated.
+     *
+     * @see InputCorpus
+     */
+    private static IntMatrix denseOperand(int dim, double density, int operand) {
+        if (corpus == null) return createRandom(dim, density);
+        try {
+            return corpus.dense(dim, density, operand);
+        }
+        catch (IOException e) {
+            log(e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns operand k of a run as a sparse matrix: from the corpus if there is one, or else freshly generated.
+     *
+     * @see InputCorpus
+     */
+    private static SparseMatrix sparseOperand(int dim, double density, int operand) {
+        if (corpus == null) return createRandomSparse(dim, density);
+        try {
+            return corpus.sparse(dim, density, operand);
+        }
+        catch (IOException e) {
+            log(e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Measures a single run by creating and multiplying two matrices.
      * Uses the basic multiplication.
      *
      * @param dim     the dimension of the matrices
      * @param density the density of the matrices
-     * @return the time it took to perform the multiplication
+     * @return the time and allocation of the multiplication
      */
-    private static long singleBasic(int dim, double density) {
-        IntMatrix a = createRandom(dim, density), b = createRandom(dim, density);
-        long start = nanoTime();
+    private static Measurement singleBasic(int dim, double density) {
+        IntMatrix a = denseOperand(dim, density, 0), b = denseOperand(dim, density, 1);
+        Measurement m = Measurement.start();
         basicMultiplication(a, b);
-        long end = nanoTime();
-        return end - start;
+        return m.stop();
     }
 
     /**
@@ -34,14 +134,73 @@ class DataGenerator {
      *
      * @param dim     the dimension of the matrices
      * @param density the density of the matrices
-     * @return the time it took to perform the multiplication
+     * @return the time and allocation of the multiplication
      */
-    private static long singleOptim(int dim, double density) {
-        IntMatrix a = createRandom(dim, density), b = createRandom(dim, density);
-        long start = nanoTime();
+    private static Measurement singleOptim(int dim, double density) {
+        IntMatrix a = denseOperand(dim, density, 0), b = denseOperand(dim, density, 1);
+        Measurement m = Measurement.start();
         minorOptimizationMultiplication(a, b);
-        long end = nanoTime();
-        return end - start;
+        return m.stop();
+    }
+
+    /**
+     * Measures a single run by creating and multiplying two matrices.
+     * Uses the cache-blocked (tiled) multiplication.
+     *
+     * @param dim     the dimension of the matrices
+     * @param density the density of the matrices
+     * @return the time and allocation of the multiplication
+     */
+    private static Measurement singleTiled(int dim, double density) {
+        IntMatrix a = denseOperand(dim, density, 0), b = denseOperand(dim, density, 1);
+        Measurement m = Measurement.start();
+        tiledMultiplication(a, b);
+        return m.stop();
+    }
+
+    /**
+     * Measures a single run by creating and multiplying two matrices.
+     * Uses the parallel multiplication with {@link DataGenerator#threads} threads.
+     *
+     * @param dim     the dimension of the matrices
+     * @param density the density of the matrices
+     * @return the time and allocation of the multiplication
+     */
+    private static Measurement singleParallel(int dim, double density) {
+        IntMatrix a = denseOperand(dim, density, 0), b = denseOperand(dim, density, 1);
+        Measurement m = Measurement.start();
+        parallelMultiplication(a, b, threads);
+        return m.stop();
+    }
+
+    /**
+     * Measures a single run by creating and multiplying two matrices.
+     * Uses the Strassen-Winograd multiplication.
+     *
+     * @param dim     the dimension of the matrices
+     * @param density the density of the matrices
+     * @return the time and allocation of the multiplication
+     */
+    private static Measurement singleStrassen(int dim, double density) {
+        IntMatrix a = denseOperand(dim, density, 0), b = denseOperand(dim, density, 1);
+        Measurement m = Measurement.start();
+        strassenMultiplication(a, b);
+        return m.stop();
+    }
+
+    /**
+     * Measures a single run by creating and multiplying two matrices.
+     * Uses the multiplication written with the Vector API.
+     *
+     * @param dim     the dimension of the matrices
+     * @param density the density of the matrices
+     * @return the time and allocation of the multiplication
+     */
+    private static Measurement singleVector(int dim, double density) {
+        IntMatrix a = denseOperand(dim, density, 0), b = denseOperand(dim, density, 1);
+        Measurement m = Measurement.start();
+        vectorMultiplication(a, b);
+        return m.stop();
     }
 
     /**
@@ -50,78 +209,710 @@ class DataGenerator {
      *
      * @param dim     the dimension of the matrices
      * @param density the density of the matrices
-     * @return the time it took to perform the multiplication
+     * @return the time and allocation of the multiplication
      */
-    private static long singleSparse(int dim, double density) {
-        SparseMatrix a = createRandomSparse(dim, density), b = createRandomSparse(dim, density);
-        long start = nanoTime();
+    private static Measurement singleSparse(int dim, double density) {
+        SparseMatrix a = sparseOperand(dim, density, 0), b = sparseOperand(dim, density, 1);
+        Measurement m = Measurement.start();
         SparseMatrix.multiply(a, b);
-        long end = nanoTime();
-        return end - start;
+        return m.stop();
     }
 
     /**
-     * Generates a single data point by making multiple runs and averaging the results.
+     * Measures a single run by creating and multiplying two matrices.
+     * Uses the parallel sparse multiplication with {@link DataGenerator#threads} threads.
      *
-     * @param methodName   the name of the multiplication method to test
-     * @param numberOfRuns the number of single runs to make
-     * @param size         the dimension of the matrices to create and multiply
-     * @param density      the density of the matrices
-     * @return the average amount of time taken to perform the multiplication
+     * @param dim     the dimension of the matrices
+     * @param density the density of the matrices
+     * @return the time and allocation of the multiplication
+     */
+    private static Measurement singleParallelSparse(int dim, double density) {
+        SparseMatrix a = sparseOperand(dim, density, 0), b = sparseOperand(dim, density, 1);
+        Measurement m = Measurement.start();
+        SparseMatrix.parallelMultiply(a, b, threads);
+        return m.stop();
+    }
+
+    /**
+     * Measures a single run by creating and multiplying two matrices.
+     * Uses the sparse multiplication that produces a sparse matrix.
+     *
+     * @param dim     the dimension of the matrices
+     * @param density the density of the matrices
+     * @return the time and allocation of the multiplication
+     */
+    private static Measurement singleSparseOutput(int dim, double density) {
+        SparseMatrix a = sparseOperand(dim, density, 0), b = sparseOperand(dim, density, 1);
+        Measurement m = Measurement.start();
+        SparseMatrix.sparseMultiply(a, b);
+        return m.stop();
+    }
+
+    /**
+     * Measures a single run by creating a sparse and a dense matrix and multiplying them, sparse times dense.
+     *
+     * @param dim     the dimension of the matrices
+     * @param density the density of the sparse matrix
+     * @return the time and allocation of the multiplication
+     * @see DataGenerator#denseDensity
+     */
+    private static Measurement singleSparseDense(int dim, double density) {
+        SparseMatrix a = sparseOperand(dim, density, 0);
+        IntMatrix b = denseOperand(dim, denseDensity, 1);
+        Measurement m = Measurement.start();
+        SparseMatrix.multiply(a, b);
+        return m.stop();
+    }
+
+    /**
+     * Measures a single run by creating a dense and a sparse matrix and multiplying them, dense times sparse.
+     *
+     * @param dim     the dimension of the matrices
+     * @param density the density of the sparse matrix
+     * @return the time and allocation of the multiplication
+     * @see DataGenerator#denseDensity
+     */
+    private static Measurement singleDenseSparse(int dim, double density) {
+        IntMatrix a = denseOperand(dim, denseDensity, 0);
+        SparseMatrix b = sparseOperand(dim, density, 1);
+        Measurement m = Measurement.start();
+        SparseMatrix.multiply(a, b);
+        return m.stop();
+    }
+
+    /**
+     * Measures a single run by multiplying a chain of four matrices, dense, dense, sparse and sparse,
+     * in the order and with the kernels chosen by the {@link MatrixChain} planner. Planning is timed with the products.
+     *
+     * @param dim     the dimension of the matrices
+     * @param density the density of the sparse matrices
+     * @return the time and allocation of planning and multiplying the chain
+     * @see DataGenerator#denseDensity
+     */
+    private static Measurement singleChain(int dim, double density) {
+        IntMatrix a = denseOperand(dim, denseDensity, 0), b = denseOperand(dim, denseDensity, 1);
+        SparseMatrix c = sparseOperand(dim, density, 2), d = sparseOperand(dim, density, 3);
+        if (auto == null) auto = loadAutoProfile();
+        Measurement m = Measurement.start();
+        new MatrixChain(auto, threads).times(a).times(b).times(c).times(d).multiply();
+        return m.stop();
+    }
+
+    /**
+     * Measures a single run by building a sparse matrix from triples in random order, with duplicates,
+     * added by {@link DataGenerator#threads} threads at once. The triples are generated before the timing.
+     *
+     * @param dim     the dimension of the matrix
+     * @param density the number of triples, as a proportion of the cells
+     * @return the time and allocation of adding the triples and building the matrix
+     */
+    private static Measurement singleCoo(int dim, double density) {
+        int count = (int) Math.min(Integer.MAX_VALUE / 3, (long) (density * dim * dim));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] triples = new int[3 * count];
+        for (int t = 0; t < count; t++) {
+            triples[3 * t] = random.nextInt(dim);
+            triples[3 * t + 1] = random.nextInt(dim);
+            triples[3 * t + 2] = random.nextInt(10);
+        }
+
+        Measurement m = Measurement.start();
+        SparseMatrixBuilder builder = new SparseMatrixBuilder(dim);
+        Thread[] adders = new Thread[threads];
+        for (int k = 0; k < threads; k++) {
+            int from = (int) ((long) count * k / threads), to = (int) ((long) count * (k + 1) / threads);
+            adders[k] = new Thread(() -> {
+                SparseMatrixBuilder.Appender appender = builder.appender();
+                for (int t = from; t < to; t++)
+                    appender.add(triples[3 * t], triples[3 * t + 1], triples[3 * t + 2]);
+            });
+            adders[k].start();
+        }
+        try {
+            for (Thread adder : adders) adder.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        builder.build(threads);
+        return m.stop();
+    }
+
+    /**
+     * Measures a single run of {@link DataGenerator#iterations} sparse matrix-vector products, y = a * x,
+     * each feeding its product back in as the next vector. This is the inner loop of iterative solvers,
+     * so the time is dominated by streaming the arrays of the matrix rather than by a single product.
+     *
+     * @param dim     the dimension of the matrix
+     * @param density the density of the matrix
+     * @return the time and allocation of all the products
+     */
+    private static Measurement singleSpMV(int dim, double density) {
+        SparseMatrix a = sparseOperand(dim, density, 0);
+        return iterate(dim, (x, y) -> SparseMatrix.multiply(a, x, y));
+    }
+
+    /**
+     * Measures a single run of {@link DataGenerator#iterations} sparse matrix-vector products
+     * with {@link DataGenerator#threads} threads.
+     *
+     * @param dim     the dimension of the matrix
+     * @param density the density of the matrix
+     * @return the time and allocation of all the products
+     * @see DataGenerator#singleSpMV(int, double)
+     */
+    private static Measurement singleParallelSpMV(int dim, double density) {
+        SparseMatrix a = sparseOperand(dim, density, 0);
+        return iterate(dim, (x, y) -> SparseMatrix.parallelMultiply(a, x, y, threads));
+    }
+
+    /**
+     * Measures a single run of {@link DataGenerator#iterations} matrix-vector products in the ELLPACK format.
+     * The conversion from the compressed row format is not timed.
+     *
+     * @param dim     the dimension of the matrix
+     * @param density the density of the matrix
+     * @return the time and allocation of all the products
+     * @see DataGenerator#singleSpMV(int, double)
+     */
+    private static Measurement singleEll(int dim, double density) {
+        EllMatrix a = EllMatrix.fromSparse(sparseOperand(dim, density, 0));
+        return iterate(dim, (x, y) -> EllMatrix.multiply(a, x, y));
+    }
+
+    /**
+     * Measures a single run of {@link DataGenerator#iterations} matrix-vector products in the SELL-C-sigma format.
+     * The conversion from the compressed row format is not timed.
+     *
+     * @param dim     the dimension of the matrix
+     * @param density the density of the matrix
+     * @return the time and allocation of all the products
+     * @see DataGenerator#singleSpMV(int, double)
+     */
+    private static Measurement singleSell(int dim, double density) {
+        SellMatrix a = SellMatrix.fromSparse(sparseOperand(dim, density, 0));
+        return iterate(dim, (x, y) -> SellMatrix.multiply(a, x, y));
+    }
+
+    /**
+     * Measures a single run of {@link DataGenerator#iterations} matrix-vector products in the block sparse row format.
+     * The conversion from the compressed row format is not timed.
+     *
+     * @param dim     the dimension of the matrix
+     * @param density the density of the matrix
+     * @return the time and allocation of all the products
+     * @see DataGenerator#singleSpMV(int, double)
+     */
+    private static Measurement singleBsr(int dim, double density) {
+        BsrMatrix a = BsrMatrix.fromSparse(sparseOperand(dim, density, 0));
+        return iterate(dim, (x, y) -> BsrMatrix.multiply(a, x, y));
+    }
+
+    /**
+     * Times {@link DataGenerator#iterations} matrix-vector products, each feeding its product back in as the next vector.
+     *
+     * @param dim     the length of the vectors
+     * @param product writes the product of the matrix and its first argument to its second argument
+     * @return the time and allocation of all the products
+     */
+    private static Measurement iterate(int dim, BiConsumer<int[], int[]> product) {
+        int[] x = new int[dim], y = new int[dim];
+        Arrays.fill(x, 1);
+        Measurement m = Measurement.start();
+        for (int i = 0; i < iterations; i++) {
+            product.accept(x, y);
+            int[] swap = x;
+            x = y;
+            y = swap;
+        }
+        return m.stop();
+    }
+
+    /**
+     * Measures a single run of {@link DataGenerator#iterations} steps of the power iteration,
+     * which estimates the dominant eigenvector of the matrix: x = a * x / |a * x|.
+     * The products use {@link DataGenerator#threads} threads.
+     *
+     * @param dim     the dimension of the matrix
+     * @param density the density of the matrix
+     * @return the time and allocation of all the steps
+     */
+    private static Measurement singlePowerIteration(int dim, double density) {
+        SparseMatrix a = sparseOperand(dim, density, 0);
+        double[] x = new double[dim], y = new double[dim];
+        Arrays.fill(x, 1 / Math.sqrt(dim));
+        Measurement m = Measurement.start();
+        for (int i = 0; i < iterations; i++) {
+            SparseMatrix.parallelMultiply(a, x, y, threads);
+            double norm = 0;
+            for (double value : y) norm += value * value;
+            norm = Math.sqrt(norm);
+            // A matrix without values maps everything to zero, which cannot be normalised.
+            if (norm > 0) for (int j = 0; j < dim; j++) y[j] /= norm;
+            double[] swap = x;
+            x = y;
+            y = swap;
+        }
+        return m.stop();
+    }
+
+    /**
+     * Measures a single run by creating two dense matrices, copying them to memory-mapped files and multiplying them.
+     * Uses the off-heap dense multiplication. The files are deleted afterwards.
+     *
+     * @param dim     the dimension of the matrices
+     * @param density the density of the matrices
+     * @return the time and allocation of the multiplication
+     */
+    private static Measurement singleMapped(int dim, double density) {
+        Path fileA = null, fileB = null, fileC = null;
+        try {
+            fileA = Files.createTempFile("a", ".imat");
+            fileB = Files.createTempFile("b", ".imat");
+            fileC = Files.createTempFile("c", ".imat");
+            try (MappedIntMatrix a = MappedIntMatrix.from(denseOperand(dim, density, 0), fileA);
+                 MappedIntMatrix b = MappedIntMatrix.from(denseOperand(dim, density, 1), fileB)) {
+                Measurement m = Measurement.start();
+                MappedIntMatrix.multiply(a, b, fileC).close();
+                return m.stop();
+            }
+        }
+        catch (IOException e) {
+            log(e);
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            deleteAll(fileA, fileB, fileC);
+        }
+    }
+
+    /**
+     * Measures a single run by creating two sparse matrices, copying them to memory-mapped files and multiplying them.
+     * Uses the off-heap sparse multiplication. The files are deleted afterwards.
+     *
+     * @param dim     the dimension of the matrices
+     * @param density the density of the matrices
+     * @return the time and allocation of the multiplication
+     */
+    private static Measurement singleMappedSparse(int dim, double density) {
+        Path fileA = null, fileB = null, fileC = null;
+        try {
+            fileA = Files.createTempFile("a", ".csrm");
+            fileB = Files.createTempFile("b", ".csrm");
+            fileC = Files.createTempFile("c", ".imat");
+            try (MappedSparseMatrix a = MappedSparseMatrix.from(sparseOperand(dim, density, 0), fileA);
+                 MappedSparseMatrix b = MappedSparseMatrix.from(sparseOperand(dim, density, 1), fileB)) {
+                Measurement m = Measurement.start();
+                MappedSparseMatrix.multiply(a, b, fileC).close();
+                return m.stop();
+            }
+        }
+        catch (IOException e) {
+            log(e);
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            deleteAll(fileA, fileB, fileC);
+        }
+    }
+
+    /** Deletes the given temporary files, ignoring the ones that were never created. */
+    private static void deleteAll(Path... files) {
+        for (Path file : files) {
+            if (file == null) continue;
+            try {
+                Files.deleteIfExists(file);
+            }
+            catch (IOException e) {
+                log(e);
+            }
+        }
+    }
+
+    /**
+     * Measures a single run by creating and multiplying two matrices on a grid of worker processes,
+     * including sending the blocks to the workers and gathering the product.
+     *
+     * @param dim     the dimension of the matrices
+     * @param density the density of the matrices
+     * @param sparse  whether the matrices are sent and multiplied in the compressed row format
+     * @return the time and allocation (in this JVM only) of the multiplication
+     */
+    private static Measurement singleDistributed(int dim, double density, boolean sparse) {
+        try {
+            if (cluster == null) startCluster();
+            if (sparse) {
+                SparseMatrix a = sparseOperand(dim, density, 0), b = sparseOperand(dim, density, 1);
+                Measurement m = Measurement.start();
+                cluster.multiply(a, b);
+                return m.stop();
+            }
+            IntMatrix a = denseOperand(dim, density, 0), b = denseOperand(dim, density, 1);
+            Measurement m = Measurement.start();
+            cluster.multiply(a, b);
+            return m.stop();
+        }
+        catch (IOException e) {
+            log(e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Starts the workers of the distributed multiplications, and stops them when this JVM exits. */
+    private static void startCluster() throws IOException {
+        cluster = DistributedMultiplication.start(gridSize);
+        DistributedMultiplication started = cluster;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                started.close();
+            }
+            catch (IOException e) {
+                log(e);
+            }
+        }));
+    }
+
+    /**
+     * Measures a single run by creating and multiplying two matrices.
+     * Uses the automatic kernel selection, including any conversion of the matrices it decides to make.
+     *
+     * @param dim     the dimension of the matrices
+     * @param density the density of the matrices
+     * @return the time and allocation of the multiplication
+     */
+    private static Measurement singleAuto(int dim, double density) {
+        if (auto == null) auto = loadAutoProfile();
+        IntMatrix a = denseOperand(dim, density, 0), b = denseOperand(dim, density, 1);
+        Measurement m = Measurement.start();
+        auto.multiply(a, b);
+        return m.stop();
+    }
+
+    /**
+     * Loads the profile of the automatic kernel selection, calibrating it if there is none yet.
+     * If the profile cannot be read or saved, it is calibrated for this run only.
+     */
+    private static AutoMultiplication loadAutoProfile() {
+        if (!Files.exists(AUTO_PROFILE)) print("\nCalibrating the automatic kernel selection...");
+        try {
+            return AutoMultiplication.loadOrCalibrate(AUTO_PROFILE);
+        }
+        catch (IOException e) {
+            log(e);
+            return AutoMultiplication.calibrate();
+        }
+    }
+
+    /**
+     * Measures a single run of the named multiplication method.
+     *
+     * @param methodName the name of the multiplication method to test
+     * @param size       the dimension of the matrices to create and multiply
+     * @param density    the density of the matrices
+     * @return the time and allocation of the multiplication, or an empty measurement if the method is unknown
      * @see DataGenerator#singleBasic(int, double)
      * @see DataGenerator#singleOptim(int, double)
+     * @see DataGenerator#singleTiled(int, double)
+     * @see DataGenerator#singleParallel(int, double)
+     * @see DataGenerator#singleStrassen(int, double)
+     * @see DataGenerator#singleVector(int, double)
      * @see DataGenerator#singleSparse(int, double)
+     * @see DataGenerator#singleParallelSparse(int, double)
+     * @see DataGenerator#singleSparseOutput(int, double)
+     * @see DataGenerator#singleMapped(int, double)
+     * @see DataGenerator#singleMappedSparse(int, double)
+     * @see DataGenerator#singleAuto(int, double)
+     * @see DataGenerator#singleSparseDense(int, double)
+     * @see DataGenerator#singleDenseSparse(int, double)
+     * @see DataGenerator#singleSpMV(int, double)
+     * @see DataGenerator#singleParallelSpMV(int, double)
+     * @see DataGenerator#singlePowerIteration(int, double)
+     * @see DataGenerator#singleEll(int, double)
+     * @see DataGenerator#singleSell(int, double)
+     * @see DataGenerator#singleBsr(int, double)
      */
-    private static double genDataPoint(String methodName, int numberOfRuns, int size, double density) {
-        long total = 0;
-        long time = 0;
-        for (int i = 0; i < numberOfRuns; i++) {
-            switch (methodName) {
-                case "basic":
-                case "BM": {
-                    time = singleBasic(size, density);
-                    break;
-                }
-                case "minor":
-                case "optim":
-                case "ON": {
-                    time = singleOptim(size, density);
-                    break;
-                }
-                case "sparse":
-                case "CSR": {
-                    time = singleSparse(size, density);
-                    break;
+    private static Measurement singleRun(String methodName, int size, double density) {
+        switch (methodName) {
+            case "basic":
+            case "BM": {
+                return singleBasic(size, density);
+            }
+            case "minor":
+            case "optim":
+            case "ON": {
+                return singleOptim(size, density);
+            }
+            case "tiled":
+            case "TM": {
+                return singleTiled(size, density);
+            }
+            case "parallel":
+            case "PM": {
+                return singleParallel(size, density);
+            }
+            case "strassen":
+            case "SW": {
+                return singleStrassen(size, density);
+            }
+            case "vector":
+            case "VM": {
+                return singleVector(size, density);
+            }
+            case "sparse":
+            case "CSR": {
+                return singleSparse(size, density);
+            }
+            case "parallel-sparse":
+            case "PCSR": {
+                return singleParallelSparse(size, density);
+            }
+            case "sparse-output":
+            case "SpGEMM": {
+                return singleSparseOutput(size, density);
+            }
+            case "mapped":
+            case "MAP": {
+                return singleMapped(size, density);
+            }
+            case "auto": {
+                return singleAuto(size, density);
+            }
+            case "mapped-sparse":
+            case "MCSR": {
+                return singleMappedSparse(size, density);
+            }
+            case "spmv":
+            case "SpMV": {
+                return singleSpMV(size, density);
+            }
+            case "parallel-spmv":
+            case "PSpMV": {
+                return singleParallelSpMV(size, density);
+            }
+            case "power": {
+                return singlePowerIteration(size, density);
+            }
+            case "sparse-dense":
+            case "SD": {
+                return singleSparseDense(size, density);
+            }
+            case "dense-sparse":
+            case "DS": {
+                return singleDenseSparse(size, density);
+            }
+            case "ell":
+            case "ELL": {
+                return singleEll(size, density);
+            }
+            case "sell":
+            case "SELL": {
+                return singleSell(size, density);
+            }
+            case "bsr":
+            case "BSR": {
+                return singleBsr(size, density);
+            }
+            case "coo":
+            case "COO": {
+                return singleCoo(size, density);
+            }
+            case "chain":
+            case "CHAIN": {
+                return singleChain(size, density);
+            }
+            case "distributed":
+            case "DIST": {
+                return singleDistributed(size, density, false);
+            }
+            case "distributed-sparse":
+            case "DCSR": {
+                return singleDistributed(size, density, true);
+            }
+        }
+        return Measurement.none();
+    }
+
+    /**
+     * Makes every run read its inputs from a corpus of pre-generated matrices instead of generating them.
+     *
+     * @param directory the directory of the corpus, created if needed
+     * @param seed      the seed of the first operand
+     */
+    static void setCorpus(Path directory, long seed) throws IOException {
+        corpus = new InputCorpus(directory, seed);
+    }
+
+    /** Sets the number of workers on each side of the grid of the distributed multiplications. */
+    static void setGridSize(int size) {
+        if (size <= 0) throw new IllegalArgumentException("Grid size must be positive: " + size);
+        if (cluster != null) throw new IllegalStateException("The workers have already been started");
+        gridSize = size;
+    }
+
+    /** Sets the density of the dense operand of the mixed sparse-dense multiplications. */
+    static void setDenseDensity(double density) {
+        if (density < 0 || density > 1) throw new IllegalArgumentException("Density must be in [0, 1]: " + density);
+        denseDensity = density;
+    }
+
+    /** Sets the number of matrix-vector products made by a single run of the iterative workloads. */
+    static void setIterations(int numberOfIterations) {
+        if (numberOfIterations <= 0)
+            throw new IllegalArgumentException("Iterations must be positive: " + numberOfIterations);
+        iterations = numberOfIterations;
+    }
+
+    /**
+     * Sets up the adaptive mode of {@link DataGenerator#genDataPoint(String, int, int, double)}.
+     * A target of 0 turns the adaptive mode off.
+     *
+     * @param targetWidth    the widest acceptable confidence interval, relative to the mean
+     * @param budgetInMillis the longest time to spend on a single data point
+     */
+    static void setAdaptive(double targetWidth, long budgetInMillis) {
+        adaptiveTarget = targetWidth;
+        adaptiveBudget = budgetInMillis * 1_000_000;
+    }
+
+    /**
+     * Makes a single run, which a flight recording sees as a {@link KernelEvent} of the run phase
+     * around the events of its kernels.
+     */
+    private static Measurement recordedRun(String methodName, int size, double density) {
+        KernelEvent event = KernelEvent.start(methodName, KernelEvent.RUN, size, threads);
+        Measurement m = singleRun(methodName, size, density);
+        event.finish(density, Math.round(density * size * size));
+        return m;
+    }
+
+    /** Writes a data point, which a flight recording sees as a {@link KernelEvent} of the write phase. */
+    private static void write(DataWriter writer, Statistics dp, int x, boolean first) {
+        KernelEvent event = KernelEvent.start("data point", KernelEvent.WRITE, x, 1);
+        if (first) writer.writeFirstDP(dp, x);
+        else writer.writeDP(dp, x);
+        event.finish(Double.NaN, 0);
+    }
+
+    /**
+     * Generates a single data point by making multiple runs and summarising their times.
+     * Every run is kept, so the median, percentiles and confidence interval can be reported along with the mean.
+     * In the adaptive mode, runs are added after the first numberOfRuns until the confidence interval
+     * is narrow enough, the time budget is spent or {@link DataGenerator#MAX_ADAPTIVE_RUNS} is reached.
+     * The interval is only computed once there are {@link DataGenerator#MIN_ADAPTIVE_RUNS} runs, and then
+     * again every time the number of runs has grown by a quarter, as its bootstrap takes a sort and
+     * a thousand resamples, which would take longer than the runs of a fast kernel.
+     *
+     * @param methodName   the name of the multiplication method to test
+     * @param numberOfRuns the number of single runs to make (the least number in the adaptive mode)
+     * @param size         the dimension of the matrices to create and multiply
+     * @param density      the density of the matrices
+     * @return the statistics of the time taken to perform the multiplication
+     * @see DataGenerator#singleRun(String, int, double)
+     */
+    static Statistics genDataPoint(String methodName, int numberOfRuns, int size, double density) {
+        Measurement[] samples = new Measurement[Math.max(numberOfRuns, 1)];
+        long start = nanoTime();
+        int runs = 0;
+        for (; runs < numberOfRuns; runs++)
+            samples[runs] = recordedRun(methodName, size, density);
+
+        if (adaptiveTarget > 0) {
+            int nextCheck = Math.max(runs, MIN_ADAPTIVE_RUNS);
+            while (nanoTime() - start < adaptiveBudget && runs < MAX_ADAPTIVE_RUNS) {
+                if (runs >= nextCheck) {
+                    if (Statistics.of(samples, runs).relativeConfidenceWidth() <= adaptiveTarget) break;
+                    nextCheck = runs + Math.max(1, runs / 4);
                 }
+                if (runs == samples.length) samples = Arrays.copyOf(samples, samples.length * 2);
+                samples[runs++] = recordedRun(methodName, size, density);
             }
-            total += time;
         }
-        return ((double) total) / numberOfRuns;
+        return Statistics.of(samples, runs);
     }
 
     /**
      * Generates a data set to be put in a line chart.
-     * Each point is a combination of input size and average multiplication time.
+     * Each point is a combination of input size and the statistics of the multiplication time.
      * The input size for each point is the product of
      * the startSize and the index of the data point (counting from 1).
      * Thus each 2D point has an x-value that is a multiple of the first data point.
      * This allows tracking the time complexity of a single run.
      *
+     * @param writer             the writer of the data points
      * @param startSize          the size of the input for the first data point
      * @param numberOfDataPoints the total number of data points to create
      * @param numberOfRuns       the number of runs to make before calculating an average
      */
-    static void genData(String methodName, int numberOfDataPoints, int numberOfRuns, int startSize, double density) {
+    static void genData(DataWriter writer, String methodName, int numberOfDataPoints, int numberOfRuns, int startSize, double density) {
         System.out.print(formatBar(0, numberOfDataPoints));
 
-        double first = genDataPoint(methodName, numberOfRuns, startSize, density);
-        writeFirstDP(first, startSize);
+        Statistics first = genDataPoint(methodName, numberOfRuns, startSize, density);
+        write(writer, first, startSize, true);
         System.out.print(formatBar(1, numberOfDataPoints));
 
         for (int i = 1; i < numberOfDataPoints; i++) {
             int size = startSize * (i + 1);
-            double dp = genDataPoint(methodName, numberOfRuns, size, density);
-            writeDP(dp, size);
+            Statistics dp = genDataPoint(methodName, numberOfRuns, size, density);
+            write(writer, dp, size, false);
+            System.out.print(formatBar(i + 1, numberOfDataPoints));
+        }
+
+    }
+
+    /**
+     * Generates a data set showing how the parallel multiplication scales with the number of threads.
+     * The size of the matrices is fixed and the i-th data point (counting from 1) uses i threads.
+     *
+     * @param writer             the writer of the data points
+     * @param methodName         the name of the parallel multiplication method to test
+     * @param numberOfDataPoints the largest number of threads to use
+     * @param numberOfRuns       the number of runs to make before calculating an average
+     * @param size               the dimension of the matrices
+     * @param density            the density of the matrices
+     */
+    static void genScalingData(DataWriter writer, String methodName, int numberOfDataPoints, int numberOfRuns, int size, double density) {
+        System.out.print(formatBar(0, numberOfDataPoints));
+
+        threads = 1;
+        Statistics first = genDataPoint(methodName, numberOfRuns, size, density);
+        write(writer, first, threads, true);
+        System.out.print(formatBar(1, numberOfDataPoints));
+
+        for (int i = 1; i < numberOfDataPoints; i++) {
+            threads = i + 1;
+            Statistics dp = genDataPoint(methodName, numberOfRuns, size, density);
+            write(writer, dp, threads, false);
+            System.out.print(formatBar(i + 1, numberOfDataPoints));
+        }
+
+    }
+
+    /**
+     * Generates a data set showing how the Strassen multiplication depends on its leaf size.
+     * The size of the matrices is fixed and the i-th data point (counting from 1)
+     * uses a leaf size of i * {@link DataGenerator#CROSSOVER_STEP}.
+     * The fastest point is where the recursion should hand over to the classical kernel.
+     *
+     * @param writer             the writer of the data points
+     * @param numberOfDataPoints the number of leaf sizes to try
+     * @param numberOfRuns       the number of runs to make before calculating an average
+     * @param size               the dimension of the matrices
+     * @param density            the density of the matrices
+     */
+    static void genCrossoverData(DataWriter writer, int numberOfDataPoints, int numberOfRuns, int size, double density) {
+        System.out.print(formatBar(0, numberOfDataPoints));
+
+        setStrassenLeafSize(CROSSOVER_STEP);
+        Statistics first = genDataPoint("SW", numberOfRuns, size, density);
+        write(writer, first, CROSSOVER_STEP, true);
+        System.out.print(formatBar(1, numberOfDataPoints));
+
+        for (int i = 1; i < numberOfDataPoints; i++) {
+            int leafSize = CROSSOVER_STEP * (i + 1);
+            setStrassenLeafSize(leafSize);
+            Statistics dp = genDataPoint("SW", numberOfRuns, size, density);
+            write(writer, dp, leafSize, false);
             System.out.print(formatBar(i + 1, numberOfDataPoints));
         }
 
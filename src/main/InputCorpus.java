@@ -0,0 +1,66 @@
+package main;
+
+import matrices.IntMatrix;
+import matrices.SparseMatrix;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static matrices.SparseMatrix.createRandomSparse;
+
+/**
+ * A directory of input matrices that are generated once and read back by every later run, sweep and worker JVM.
+ * <p>
+ * Operand k of a data point is the random sparse matrix of its dimension and density generated from
+ * the seed of the corpus plus k, so every run and every method gets the same operands on any machine.
+ * The dense operand is the same matrix as the sparse one, converted, so dense and sparse methods
+ * multiply identical matrices (whose values are between 1 and 4).
+ * <p>
+ * The matrices are stored in the binary formats of {@link matrices.MappedSparseMatrix} and
+ * {@link matrices.MappedIntMatrix}, and memory-mapped and copied onto the heap for every run, which is
+ * a bulk copy rather than a generation. A file is written under a temporary name and then renamed,
+ * so JVMs sharing the corpus never read a file that is only partly written.
+ */
+final class InputCorpus {
+
+    private final Path directory;
+    private final long seed;
+
+    /**
+     * Opens the corpus in the given directory, creating the directory if needed.
+     *
+     * @param seed the seed of the first operand
+     */
+    InputCorpus(Path directory, long seed) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.seed = seed;
+    }
+
+    /** Returns operand k as a sparse matrix, generating it the first time it is asked for. */
+    SparseMatrix sparse(int dim, double density, int operand) throws IOException {
+        Path file = file(dim, density, operand, ".csr");
+        if (Files.exists(file)) return SparseMatrix.load(file);
+        SparseMatrix m = createRandomSparse(dim, density, seed + operand);
+        Path partial = Files.createTempFile(directory, file.getFileName().toString(), ".part");
+        SparseMatrix.save(m, partial);
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return m;
+    }
+
+    /** Returns operand k as a dense matrix, converting the sparse one the first time it is asked for. */
+    IntMatrix dense(int dim, double density, int operand) throws IOException {
+        Path file = file(dim, density, operand, ".dense");
+        if (Files.exists(file)) return IntMatrix.load(file);
+        IntMatrix m = SparseMatrix.toDense(sparse(dim, density, operand));
+        Path partial = Files.createTempFile(directory, file.getFileName().toString(), ".part");
+        IntMatrix.save(m, partial);
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return m;
+    }
+
+    private Path file(int dim, double density, int operand, String extension) {
+        return directory.resolve("n" + dim + "-d" + density + "-s" + (seed + operand) + extension);
+    }
+}
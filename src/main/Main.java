@@ -1,10 +1,21 @@
 package main;
 
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import matrices.KernelEvent;
 import util.DataWriter;
 import util.Logger;
+import util.Measurement;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+
+import static main.DataGenerator.genCrossoverData;
 import static main.DataGenerator.genData;
+import static main.DataGenerator.genScalingData;
 import static main.DataGenerator.letJVMLoad;
+import static util.CommonlyUsed.DEFAULT_SEED;
 import static util.CommonlyUsed.print;
 import static util.Logger.log;
 
@@ -17,12 +28,64 @@ public class Main {
     private static final int START_SIZE_INDEX = 4;
     private static final int DENSITY_INDEX = 5;
 
+    /**
+     * Methods that end with this suffix are swept over the number of threads instead of the matrix size.
+     * The number of data points is then the largest number of threads.
+     */
+    private static final String SCALING_SUFFIX = "-scaling";
+
+    /**
+     * This method sweeps the leaf size of the Strassen multiplication instead of the matrix size.
+     * The number of data points is then the number of leaf sizes to try.
+     */
+    private static final String CROSSOVER_METHOD = "crossover";
+
+    /**
+     * Optional flags that may follow the positional arguments.
+     * With a confidence target, runs are added to each data point until its 95% confidence interval
+     * is at most that fraction of the mean; the budget limits the time spent on a single data point.
+     */
+    private static final String CONFIDENCE_FLAG = "-ci=";
+    private static final String BUDGET_FLAG = "-budget=";
+    /**
+     * The number of matrix-vector products in a single run of the iterative workloads
+     * (SpMV, PSpMV, power, ELL, SELL and BSR).
+     */
+    private static final String ITERATIONS_FLAG = "-iterations=";
+    /**
+     * The density of the dense operand of the mixed sparse-dense methods (SD and DS).
+     * The density argument is then the density of the sparse operand.
+     */
+    private static final String DENSE_DENSITY_FLAG = "-dense-density=";
+    /** The number of worker processes on each side of the grid of the distributed methods (DIST and DCSR). */
+    private static final String GRID_FLAG = "-grid=";
+    /**
+     * Reads the inputs from a directory of pre-generated matrices, generating the ones that are missing,
+     * so that every run and every method multiplies the same operands. The seed picks the operands.
+     */
+    private static final String CORPUS_FLAG = "-corpus=";
+    private static final String SEED_FLAG = "-seed=";
+    /**
+     * Records the run with the Java Flight Recorder, with the settings of the built-in profile
+     * and the {@link KernelEvent}s of the kernels, and dumps the recording to the given file at the end.
+     */
+    private static final String JFR_FLAG = "-jfr=";
+    private static final String JFR_SETTINGS = "profile";
+    /** Forces a garbage collection, and waits for the collector to go quiet, before each timed run. */
+    private static final String GC_FLAG = "-gc";
+    private static final int NUMBER_OF_POSITIONAL_ARGUMENTS = 6;
+
     private static String methodToTest;
     private static String filename;
     private static int numberOfDataPoints;
     private static int numberOfRuns;
     private static int startSize;
     private static Double density = null;
+    private static double confidenceTarget = 0;
+    private static long budgetInSeconds = Long.MAX_VALUE / 1_000_000_000;
+    private static String corpusDirectory = null;
+    private static long seed = DEFAULT_SEED;
+    private static String recordingFile = null;
     private static boolean error = false;
 
     private static int wrappedParse(String s) {
@@ -52,32 +115,136 @@ public class Main {
             error = true;
             log(e);
         }
+
+        for (int i = NUMBER_OF_POSITIONAL_ARGUMENTS; i < args.length; i++) {
+            try {
+                if (args[i].startsWith(CONFIDENCE_FLAG))
+                    confidenceTarget = Double.parseDouble(args[i].substring(CONFIDENCE_FLAG.length()));
+                else if (args[i].startsWith(BUDGET_FLAG))
+                    budgetInSeconds = Long.parseLong(args[i].substring(BUDGET_FLAG.length()));
+                else if (args[i].startsWith(ITERATIONS_FLAG))
+                    DataGenerator.setIterations(Integer.parseInt(args[i].substring(ITERATIONS_FLAG.length())));
+                else if (args[i].startsWith(DENSE_DENSITY_FLAG))
+                    DataGenerator.setDenseDensity(Double.parseDouble(args[i].substring(DENSE_DENSITY_FLAG.length())));
+                else if (args[i].startsWith(GRID_FLAG))
+                    DataGenerator.setGridSize(Integer.parseInt(args[i].substring(GRID_FLAG.length())));
+                else if (args[i].startsWith(CORPUS_FLAG))
+                    corpusDirectory = args[i].substring(CORPUS_FLAG.length());
+                else if (args[i].startsWith(JFR_FLAG))
+                    recordingFile = args[i].substring(JFR_FLAG.length());
+                else if (args[i].startsWith(SEED_FLAG))
+                    seed = Long.parseLong(args[i].substring(SEED_FLAG.length()));
+                else if (args[i].equals(GC_FLAG))
+                    Measurement.setForceGc(true);
+                else {
+                    print("Unknown option " + args[i]);
+                    error = true;
+                }
+            }
+            catch (IllegalArgumentException e) {
+                print(e.getMessage());
+                error = true;
+                log(e);
+            }
+        }
     }
 
     public static void main(String[] args) {
-        if (args.length != 6) {
+        if (args.length < NUMBER_OF_POSITIONAL_ARGUMENTS) {
             print("Not enough arguments!");
-            print("USage: java main.Main <method to test> <filename> <number of data points> <number of runs> <start size> [<density>]");
+            print("USage: java main.Main <method to test> <filename> <number of data points> <number of runs> <start size> [<density>]"
+                    + " [" + CONFIDENCE_FLAG + "<relative width>] [" + BUDGET_FLAG + "<seconds per data point>] [" + GC_FLAG + "]"
+                    + " [" + ITERATIONS_FLAG + "<matrix-vector products per run>]"
+                    + " [" + DENSE_DENSITY_FLAG + "<density of the dense operand>]"
+                    + " [" + GRID_FLAG + "<workers on each side of the grid>]"
+                    + " [" + CORPUS_FLAG + "<directory of inputs> [" + SEED_FLAG + "<seed>]]"
+                    + " [" + JFR_FLAG + "<recording file>]");
+            print("Several files may be given, separated by commas. Files ending in .jsonl are written as JSON Lines"
+                    + " and files ending in .bin in a binary columnar format; all others as CSV.");
+            print("Append " + SCALING_SUFFIX + " to the method to sweep over the number of threads instead of the size.");
+            print("Use " + CROSSOVER_METHOD + " as the method to sweep over the leaf size of the Strassen multiplication.");
+            print("For long sweeps that can be stopped and resumed, use java main.SweepScheduler <grid file> <output file>.");
             return;
         }
 
         Logger.open("log.txt");
+        try {
+            run(args);
+        }
+        finally {
+            print("\nClosing logger...");
+            Logger.close();
+        }
+    }
+
+    /** Parses the arguments and measures, within a flight recording if one was asked for. */
+    private static void run(String[] args) {
         parseInput(args);
         if (error) {
             print("Could not parse arguments. See log for extra details!");
             return;
         }
 
+        DataGenerator.setAdaptive(confidenceTarget, budgetInSeconds * 1000);
+        Recording recording = null;
+        if (recordingFile != null) {
+            try {
+                recording = new Recording(Configuration.getConfiguration(JFR_SETTINGS));
+                recording.enable(KernelEvent.class);
+                recording.setDestination(Paths.get(recordingFile));
+                recording.start();
+            }
+            catch (IOException | ParseException e) {
+                print("Could not start the flight recording. See log for extra details!");
+                log(e);
+                return;
+            }
+        }
+        try {
+            measure();
+        }
+        finally {
+            if (recording != null) {
+                // The recording is dumped to its destination when it stops, also after a failed run.
+                recording.stop();
+                recording.close();
+                print("\nFlight recording written to " + recordingFile);
+            }
+        }
+    }
+
+    /** Warms up the JVM, opens the corpus and writes the measurements of the method to test. */
+    private static void measure() {
         print("Loading JVM...");
         letJVMLoad();
+        // The warm-up runs generate their own inputs, so that they do not add to the corpus.
+        if (corpusDirectory != null) {
+            try {
+                DataGenerator.setCorpus(Paths.get(corpusDirectory), seed);
+            }
+            catch (IOException e) {
+                print("Could not open the corpus " + corpusDirectory + ". See log for extra details!");
+                log(e);
+                return;
+            }
+        }
         print("method=" + methodToTest, "filename=" + filename,
                 "numberOfDataPoints=" + numberOfDataPoints, "numberOfRuns=" + numberOfRuns,
-                "startSize=" + startSize, "density=" + density);
-        DataWriter.open(filename);
-        genData(methodToTest, numberOfDataPoints, numberOfRuns, startSize, density);
-        DataWriter.close();
-
-        print("\nClosing logger...");
-        Logger.close();
+                "startSize=" + startSize, "density=" + density, "confidenceTarget=" + confidenceTarget);
+        DataWriter writer;
+        if (methodToTest.equals(CROSSOVER_METHOD)) {
+            writer = new DataWriter(filename, "leaf size");
+            genCrossoverData(writer, numberOfDataPoints, numberOfRuns, startSize, density);
+        }
+        else if (methodToTest.endsWith(SCALING_SUFFIX)) {
+            String method = methodToTest.substring(0, methodToTest.length() - SCALING_SUFFIX.length());
+            writer = new DataWriter(filename, "threads");
+            genScalingData(writer, method, numberOfDataPoints, numberOfRuns, startSize, density);
+        }
+        else {
+            writer = new DataWriter(filename);
+            genData(writer, methodToTest, numberOfDataPoints, numberOfRuns, startSize, density);
+        }
+        writer.close();
     }
 }
\ No newline at end of file
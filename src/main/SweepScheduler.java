@@ -0,0 +1,429 @@
+package main;
+
+import matrices.ChildJvm;
+import util.DataWriter;
+import util.Logger;
+import util.Statistics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static util.CommonlyUsed.DEFAULT_SEED;
+import static util.CommonlyUsed.print;
+import static util.Logger.log;
+import static util.ProgressBar.formatBar;
+
+/**
+ * Runs a whole grid of data points (method x size x density) concurrently.
+ * Every point is measured by a {@link SweepWorker} in a JVM of its own, so that points do not share
+ * a heap, a JIT or a garbage collector. Each of the concurrent workers is given its own set of cores:
+ * the JVM is told how many cores it has and, where taskset is available, it is pinned to them.
+ * The most expensive points are started first, so that the sweep does not end waiting for a single large point.
+ * <p>
+ * The results are merged into one file with one series per method and density.
+ * A series is written as soon as all of its points are done.
+ * <p>
+ * The grid is read from a properties file, for example:
+ * <pre>
+ * methods=BM,ON,CSR
+ * sizes=100,200,400
+ * densities=0.01,0.1
+ * runs=5
+ * workers=4
+ * gc=true
+ * corpus=inputs
+ * seed=1
+ * journal=results.journal
+ * options=-Xmx2g -XX:+AlwaysPreTouch
+ * </pre>
+ * The workers get the options of this JVM that every child JVM gets (see {@link ChildJvm}), the ones in
+ * options, and the number of cores of their slot.
+ * With gc set, the workers force a garbage collection before each timed run.
+ * With corpus set, the workers read their inputs from that directory of pre-generated matrices
+ * (see {@link InputCorpus}), so every method of the grid multiplies the same operands.
+ * <p>
+ * Every point that is done is appended to a journal (by default the output file followed by .journal)
+ * and forced to disk before its series is written. When the sweep is started again with the same grid,
+ * the points in the journal are not measured again, and the output file is written anew from the journal
+ * and the points that were still missing. So a sweep that crashed or was stopped only loses the points
+ * that were being measured. Points whose worker failed are not journaled, and are tried again.
+ * On SIGTERM (or Ctrl-C) the sweep stops its workers, and leaves the output with only the series that
+ * were complete, all of which are in the journal.
+ * Usage: java main.SweepScheduler &lt;grid file&gt; &lt;output file&gt;
+ */
+public class SweepScheduler {
+
+    private static final String TASKSET = "/usr/bin/taskset";
+    /** How long the shutdown waits for the sweep to stop its workers and write its output. */
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+    /** The start of the first line of a journal, which records the settings its points were measured with. */
+    private static final String JOURNAL_HEADER = "# ";
+
+    /** The methods that multiply sparse matrices, whose cost grows with the square of the density. */
+    private static final List<String> SPARSE_METHODS = Arrays.asList(
+            "sparse", "CSR", "parallel-sparse", "PCSR", "sparse-output", "SpGEMM", "mapped-sparse", "MCSR");
+
+    /**
+     * The methods that multiply a sparse matrix by vectors, or build one from triples,
+     * whose cost grows with the number of values.
+     */
+    private static final List<String> VECTOR_METHODS = Arrays.asList(
+            "spmv", "SpMV", "parallel-spmv", "PSpMV", "power", "ell", "ELL", "sell", "SELL", "bsr", "BSR",
+            "coo", "COO");
+
+    /** A single data point of the grid. */
+    private static class Point {
+
+        final String method;
+        final int size;
+        final double density;
+
+        Point(String method, int size, double density) {
+            this.method = method;
+            this.size = size;
+            this.density = density;
+        }
+
+        /** A rough estimate of the time the point takes, used only to order the points. */
+        double cost() {
+            double cubic = (double) size * size * size;
+            if (VECTOR_METHODS.contains(method)) return (double) size * size * density;
+            return SPARSE_METHODS.contains(method) ? cubic * density * density : cubic;
+        }
+
+        @Override
+        public String toString() {
+            return method + "-" + size + "-" + density;
+        }
+    }
+
+    /** The data points of one method and density, collected until they are all done. */
+    private static class Series {
+
+        final String method;
+        final double density;
+        final int expected;
+        final TreeMap<Integer, Statistics> done = new TreeMap<>();
+        int finished = 0;
+        boolean written = false;
+
+        Series(String method, double density, int expected) {
+            this.method = method;
+            this.density = density;
+            this.expected = expected;
+        }
+    }
+
+    private final List<String> methods;
+    private final int[] sizes;
+    private final double[] densities;
+    private final int numberOfRuns;
+    private final int numberOfWorkers;
+    private final boolean forceGc;
+    /** The directory of the pre-generated inputs, or null for fresh inputs in every run. */
+    private final String corpusDirectory;
+    private final long seed;
+    /** The options of every worker JVM, besides the ones it inherits from this JVM. */
+    private final List<String> workerOptions;
+    private final Path logDirectory;
+    private final Path journalFile;
+
+    private final DataWriter writer;
+    private FileChannel journal;
+    /** The statistics of the points that were done by earlier runs of the sweep, by point. */
+    private final Map<String, Statistics> journaled;
+    /** The worker JVMs that are measuring a point, to be stopped on shutdown. */
+    private final Set<Process> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopping = false;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Map<String, Series> series = new TreeMap<>();
+    private final ConcurrentLinkedQueue<Point> queue = new ConcurrentLinkedQueue<>();
+    private int pointsFinished = 0;
+    private int totalPoints;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 2) {
+            print("Usage: java main.SweepScheduler <grid file> <output file>");
+            return;
+        }
+
+        Logger.open("log.txt");
+        Properties grid = new Properties();
+        try (Reader reader = Files.newBufferedReader(Paths.get(args[0]))) {
+            grid.load(reader);
+        }
+        new SweepScheduler(grid, args[1]).run();
+        Logger.close();
+    }
+
+    private SweepScheduler(Properties grid, String filename) throws IOException {
+        methods = Arrays.asList(required(grid, "methods").split(","));
+        sizes = Arrays.stream(required(grid, "sizes").split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+        densities = Arrays.stream(required(grid, "densities").split(",")).map(String::trim)
+                .mapToDouble(Double::parseDouble).toArray();
+        numberOfRuns = Integer.parseInt(grid.getProperty("runs", "1").trim());
+        numberOfWorkers = Integer.parseInt(grid.getProperty("workers", "1").trim());
+        forceGc = Boolean.parseBoolean(grid.getProperty("gc", "false").trim());
+        corpusDirectory = grid.getProperty("corpus");
+        seed = Long.parseLong(grid.getProperty("seed", String.valueOf(DEFAULT_SEED)).trim());
+        String options = grid.getProperty("options", "").trim();
+        workerOptions = options.isEmpty() ? new ArrayList<>() : Arrays.asList(options.split("\\s+"));
+        logDirectory = Files.createDirectories(Paths.get(filename + "-logs"));
+        journalFile = Paths.get(grid.getProperty("journal", filename + ".journal").trim());
+        // The journal is checked before the output file is opened, which empties it.
+        journaled = openJournal();
+        writer = new DataWriter(filename, "matrix size", "method", "density");
+    }
+
+    private static String required(Properties grid, String key) {
+        String value = grid.getProperty(key);
+        if (value == null) throw new IllegalArgumentException("The grid does not list any " + key);
+        return value;
+    }
+
+    /** Runs every point of the grid that is not in the journal yet, and writes the results. */
+    private void run() throws IOException, InterruptedException {
+        Thread shutdown = new Thread(this::stop, "sweep-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdown);
+        try {
+            List<Point> points = new ArrayList<>();
+            for (String method : methods)
+                for (double density : densities) {
+                    series.put(seriesKey(method.trim(), density), new Series(method.trim(), density, sizes.length));
+                    for (int size : sizes)
+                        points.add(new Point(method.trim(), size, density));
+                }
+            points.sort(Comparator.comparingDouble(Point::cost).reversed());
+            totalPoints = points.size();
+
+            for (Point point : points) {
+                Statistics dp = journaled.get(point.toString());
+                if (dp != null) record(point, dp);
+                else queue.add(point);
+            }
+            if (pointsFinished > 0) print("Resuming with " + pointsFinished + " of " + totalPoints + " points done");
+
+            int cores = Runtime.getRuntime().availableProcessors();
+            int coresPerWorker = Math.max(1, cores / numberOfWorkers);
+            System.out.print(formatBar(pointsFinished, totalPoints));
+
+            ExecutorService workers = Executors.newFixedThreadPool(numberOfWorkers);
+            for (int slot = 0; slot < numberOfWorkers; slot++) {
+                int firstCore = (slot * coresPerWorker) % cores;
+                workers.submit(() -> runSlot(firstCore, coresPerWorker));
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+            // Write whatever is left of the series that had failed points. A stopped sweep leaves its
+            // unfinished series out, as their missing points are measured when it is resumed.
+            if (!stopping)
+                for (Series s : series.values())
+                    writeSeries(s);
+            writer.close();
+            journal.close();
+            print("");
+            if (stopping) print("Stopped; run the same grid again to resume");
+        }
+        finally {
+            stopped.countDown();
+            if (!stopping) Runtime.getRuntime().removeShutdownHook(shutdown);
+        }
+    }
+
+    /**
+     * Reads the points of the journal, if there is one, and opens it to append the points to come.
+     *
+     * @return the statistics of every journaled point, by point
+     * @throws IllegalArgumentException if the journal was written by a sweep with other settings
+     */
+    private Map<String, Statistics> openJournal() throws IOException {
+        String header = JOURNAL_HEADER + "runs=" + numberOfRuns + " gc=" + forceGc
+                + " corpus=" + (corpusDirectory == null ? "" : corpusDirectory.trim()) + " seed=" + seed;
+        Map<String, Statistics> journaled = new TreeMap<>();
+        byte[] content = Files.exists(journalFile) ? Files.readAllBytes(journalFile) : new byte[0];
+        // A line is only complete once its new line is written; a crash in the middle of a line leaves
+        // a part of it after the last new line, which is cut off.
+        int complete = content.length;
+        while (complete > 0 && content[complete - 1] != '\n')
+            complete--;
+        String[] lines = complete == 0 ? new String[0]
+                : new String(content, 0, complete - 1, StandardCharsets.UTF_8).split("\n");
+        if (lines.length > 0 && !lines[0].equals(header))
+            throw new IllegalArgumentException("The journal " + journalFile + " was written with other settings: "
+                    + lines[0].substring(Math.min(JOURNAL_HEADER.length(), lines[0].length())));
+        for (int i = 1; i < lines.length; i++) {
+            int separator = lines[i].indexOf(' ');
+            if (separator < 0) throw new IllegalArgumentException("Not a journal line: " + lines[i]);
+            journaled.put(lines[i].substring(0, separator), Statistics.decode(lines[i].substring(separator + 1)));
+        }
+
+        journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        journal.truncate(complete);
+        journal.position(complete);
+        if (lines.length == 0) appendToJournal(header);
+        return journaled;
+    }
+
+    /** Appends a line to the journal and forces it to disk. */
+    private void appendToJournal(String line) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining())
+            journal.write(bytes);
+        journal.force(false);
+    }
+
+    /**
+     * Stops the sweep from a shutdown hook: no point is started any more, the workers that are measuring one
+     * are stopped, and the hook waits until the output has been written, as the JVM halts when it returns.
+     */
+    private void stop() {
+        stopping = true;
+        queue.clear();
+        running.forEach(Process::destroyForcibly);
+        try {
+            if (!stopped.await(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) log("The sweep did not stop in time");
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Takes points from the queue and measures them, one at a time, on the given cores. */
+    private void runSlot(int firstCore, int numberOfCores) {
+        Point point;
+        while ((point = queue.poll()) != null) {
+            Statistics dp = measure(point, firstCore, numberOfCores);
+            // A point whose worker was stopped is measured when the sweep is resumed.
+            if (dp == null && stopping) return;
+            if (dp != null) journal(point, dp);
+            finished(point, dp);
+        }
+    }
+
+    /** Appends the result of a point to the journal, before it is written to the output. */
+    private synchronized void journal(Point point, Statistics dp) {
+        try {
+            appendToJournal(point + " " + dp.encode());
+        }
+        catch (IOException e) {
+            log(e);
+        }
+    }
+
+    /**
+     * Starts a worker JVM for the point and waits for its result.
+     *
+     * @return the data point, or null if the worker failed
+     */
+    private Statistics measure(Point point, int firstCore, int numberOfCores) {
+        List<String> command = new ArrayList<>();
+        if (new File(TASKSET).canExecute()) {
+            command.add(TASKSET);
+            command.add("-c");
+            command.add(firstCore + "-" + (firstCore + numberOfCores - 1));
+        }
+        command.add(ChildJvm.java());
+        command.addAll(ChildJvm.inheritedOptions());
+        command.addAll(workerOptions);
+        command.add("-XX:ActiveProcessorCount=" + numberOfCores);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SweepWorker.class.getName());
+        command.add(point.method);
+        command.add(String.valueOf(point.size));
+        command.add(String.valueOf(point.density));
+        command.add(String.valueOf(numberOfRuns));
+        command.add(logDirectory.resolve(point + ".txt").toString());
+        if (forceGc) command.add(SweepWorker.GC_FLAG);
+        if (corpusDirectory != null) {
+            command.add(SweepWorker.CORPUS_FLAG + corpusDirectory.trim());
+            command.add(SweepWorker.SEED_FLAG + seed);
+        }
+
+        try {
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            running.add(process);
+            // The sweep may have been stopped while the worker was starting.
+            if (stopping) process.destroyForcibly();
+            Statistics result = null;
+            try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = output.readLine()) != null)
+                    if (line.startsWith(SweepWorker.RESULT_PREFIX))
+                        result = Statistics.decode(line.substring(SweepWorker.RESULT_PREFIX.length()));
+            }
+            int exitCode = process.waitFor();
+            running.remove(process);
+            if (exitCode != 0 || result == null) {
+                if (stopping) return null;
+                log("Worker for " + point + " failed with exit code " + exitCode);
+                return null;
+            }
+            return result;
+        }
+        catch (IOException e) {
+            log(e);
+        }
+        catch (InterruptedException e) {
+            log(e);
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /** Records the result of a point and shows the progress. */
+    private synchronized void finished(Point point, Statistics dp) {
+        record(point, dp);
+        System.out.print(formatBar(pointsFinished, totalPoints));
+    }
+
+    /** Records the result of a point and writes its series if it was the last one missing. */
+    private synchronized void record(Point point, Statistics dp) {
+        Series s = series.get(seriesKey(point.method, point.density));
+        s.finished++;
+        if (dp != null) s.done.put(point.size, dp);
+        if (s.finished == s.expected) writeSeries(s);
+        pointsFinished++;
+    }
+
+    /** Writes the points of a series, compared to its smallest size. */
+    private synchronized void writeSeries(Series s) {
+        if (s.written || s.done.isEmpty()) return;
+        s.written = true;
+        boolean first = true;
+        for (Map.Entry<Integer, Statistics> point : s.done.entrySet()) {
+            if (first) writer.writeFirstDP(point.getValue(), point.getKey(), s.method, s.density);
+            else writer.writeDP(point.getValue(), point.getKey(), s.method, s.density);
+            first = false;
+        }
+    }
+
+    private static String seriesKey(String method, double density) {
+        return method + " " + density;
+    }
+}
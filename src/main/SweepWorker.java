@@ -0,0 +1,59 @@
+package main;
+
+import util.Logger;
+import util.Measurement;
+import util.Statistics;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import static main.DataGenerator.genDataPoint;
+import static main.DataGenerator.letJVMLoad;
+import static util.CommonlyUsed.DEFAULT_SEED;
+
+/**
+ * Measures a single data point of a sweep in its own JVM and prints the result.
+ * It is started by the {@link SweepScheduler}, which reads the line starting with
+ * {@link SweepWorker#RESULT_PREFIX} from its output.
+ * <p>
+ * Usage: java main.SweepWorker &lt;method&gt; &lt;size&gt; &lt;density&gt; &lt;number of runs&gt; &lt;log file&gt;
+ * [-gc] [-corpus=&lt;directory&gt; -seed=&lt;seed&gt;]
+ */
+public class SweepWorker {
+
+    static final String RESULT_PREFIX = "RESULT ";
+    static final String GC_FLAG = "-gc";
+    static final String CORPUS_FLAG = "-corpus=";
+    static final String SEED_FLAG = "-seed=";
+
+    public static void main(String[] args) throws IOException {
+        boolean valid = args.length >= 5;
+        boolean forceGc = false;
+        String corpusDirectory = null;
+        long seed = DEFAULT_SEED;
+        for (int i = 5; i < args.length; i++) {
+            if (args[i].equals(GC_FLAG)) forceGc = true;
+            else if (args[i].startsWith(CORPUS_FLAG)) corpusDirectory = args[i].substring(CORPUS_FLAG.length());
+            else if (args[i].startsWith(SEED_FLAG)) seed = Long.parseLong(args[i].substring(SEED_FLAG.length()));
+            else valid = false;
+        }
+        if (!valid) {
+            System.err.println("Usage: java main.SweepWorker <method> <size> <density> <number of runs> <log file>"
+                    + " [-gc] [-corpus=<directory> -seed=<seed>]");
+            System.exit(2);
+        }
+
+        Logger.open(args[4]);
+        String method = args[0];
+        int size = Integer.parseInt(args[1]);
+        double density = Double.parseDouble(args[2]);
+        int numberOfRuns = Integer.parseInt(args[3]);
+        Measurement.setForceGc(forceGc);
+
+        letJVMLoad();
+        if (corpusDirectory != null) DataGenerator.setCorpus(Paths.get(corpusDirectory), seed);
+        Statistics dp = genDataPoint(method, numberOfRuns, size, density);
+        System.out.println(RESULT_PREFIX + dp.encode());
+        Logger.close();
+    }
+}
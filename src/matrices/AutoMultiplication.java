@@ -0,0 +1,199 @@
+package matrices;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static java.lang.System.nanoTime;
+import static util.CommonlyUsed.DEFAULT_SEED;
+
+/**
+ * Chooses between the dense and the sparse multiplication based on the density of the operands.
+ * The choice comes from a profile of the current machine: for a few dimensions, the density below which
+ * the parallel sparse multiplication beats the parallel dense one. The profile is measured once by
+ * {@link AutoMultiplication#calibrate()} and saved to a properties file for later runs.
+ * <p>
+ * The operands are converted between {@link IntMatrix} and {@link SparseMatrix} as needed,
+ * and the product is always dense, like the products of the other kernels.
+ */
+public class AutoMultiplication {
+
+    /** The dimensions that are measured by the calibration. */
+    private static final int[] CALIBRATION_DIMENSIONS = {100, 200, 400, 800};
+
+    /** The densities that are tried at every dimension, in increasing order. */
+    private static final double[] CALIBRATION_DENSITIES = {0.001, 0.003, 0.01, 0.03, 0.1, 0.3, 1};
+
+    /** Each kernel is timed this many times (after one warm-up run) and the fastest time is kept. */
+    private static final int CALIBRATION_RUNS = 3;
+
+    private static final String DIMENSIONS_KEY = "dimensions";
+    private static final String CROSSOVER_KEY = "crossover.";
+
+    /** The calibrated dimensions, in increasing order. */
+    private final int[] dimensions;
+    /** The density below which the sparse kernel is faster, for each of the dimensions. */
+    private final double[] crossovers;
+
+    private AutoMultiplication(int[] dimensions, double[] crossovers) {
+        this.dimensions = dimensions;
+        this.crossovers = crossovers;
+    }
+
+    /**
+     * Loads the profile from the file, or calibrates and saves a new one if the file does not exist.
+     *
+     * @param profile the properties file holding the profile
+     */
+    public static AutoMultiplication loadOrCalibrate(Path profile) throws IOException {
+        if (Files.exists(profile)) return load(profile);
+        AutoMultiplication auto = calibrate();
+        auto.save(profile);
+        return auto;
+    }
+
+    /** Loads a profile that was saved by {@link AutoMultiplication#save(Path)}. */
+    public static AutoMultiplication load(Path profile) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(profile)) {
+            properties.load(reader);
+        }
+        String listed = properties.getProperty(DIMENSIONS_KEY);
+        if (listed == null) throw new IOException("No " + DIMENSIONS_KEY + " in profile " + profile);
+
+        int[] dimensions = Arrays.stream(listed.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+        double[] crossovers = new double[dimensions.length];
+        for (int d = 0; d < dimensions.length; d++) {
+            String crossover = properties.getProperty(CROSSOVER_KEY + dimensions[d]);
+            if (crossover == null) throw new IOException("No crossover for " + dimensions[d] + " in profile " + profile);
+            crossovers[d] = Double.parseDouble(crossover);
+        }
+        return new AutoMultiplication(dimensions, crossovers);
+    }
+
+    /** Saves the profile as a properties file. */
+    public void save(Path profile) throws IOException {
+        Properties properties = new Properties();
+        StringBuilder listed = new StringBuilder();
+        for (int d = 0; d < dimensions.length; d++) {
+            if (d > 0) listed.append(",");
+            listed.append(dimensions[d]);
+            properties.setProperty(CROSSOVER_KEY + dimensions[d], String.valueOf(crossovers[d]));
+        }
+        properties.setProperty(DIMENSIONS_KEY, listed.toString());
+        try (Writer writer = Files.newBufferedWriter(profile)) {
+            properties.store(writer, "Densities below which the sparse multiplication is faster");
+        }
+    }
+
+    /**
+     * Measures the crossover densities on this machine.
+     * For each calibration dimension the densities are tried in increasing order until the dense
+     * multiplication wins. The crossover is then put halfway (on a log scale) between the last density
+     * where the sparse multiplication won and the first where it lost.
+     */
+    public static AutoMultiplication calibrate() {
+        double[] crossovers = new double[CALIBRATION_DIMENSIONS.length];
+        for (int d = 0; d < CALIBRATION_DIMENSIONS.length; d++) {
+            int dim = CALIBRATION_DIMENSIONS[d];
+            double lastSparseWin = 0;
+            double firstDenseWin = 0;
+            for (double density : CALIBRATION_DENSITIES) {
+                // A fixed seed, so that calibrating again times the same matrices.
+                SparseMatrix a = SparseMatrix.createRandomSparse(dim, density, DEFAULT_SEED);
+                SparseMatrix b = SparseMatrix.createRandomSparse(dim, density, DEFAULT_SEED + 1);
+                IntMatrix denseA = SparseMatrix.toDense(a), denseB = SparseMatrix.toDense(b);
+
+                long sparse = fastest(() -> SparseMatrix.parallelMultiply(a, b));
+                long dense = fastest(() -> IntMatrix.parallelMultiplication(denseA, denseB));
+                if (sparse < dense) lastSparseWin = density;
+                else {
+                    firstDenseWin = density;
+                    break;
+                }
+            }
+
+            if (firstDenseWin == 0) crossovers[d] = 1;
+            else if (lastSparseWin == 0) crossovers[d] = CALIBRATION_DENSITIES[0];
+            else crossovers[d] = Math.sqrt(lastSparseWin * firstDenseWin);
+        }
+        return new AutoMultiplication(CALIBRATION_DIMENSIONS.clone(), crossovers);
+    }
+
+    /** Returns the fastest of a few timed runs of the kernel, after a warm-up run. */
+    private static long fastest(Runnable kernel) {
+        kernel.run();
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < CALIBRATION_RUNS; run++) {
+            long start = nanoTime();
+            kernel.run();
+            best = Math.min(best, nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * Returns the density below which the sparse multiplication is expected to be faster.
+     * Between calibrated dimensions the crossover is interpolated on a log scale;
+     * outside of them the nearest calibrated value is used.
+     */
+    double crossover(int dim) {
+        if (dim <= dimensions[0]) return crossovers[0];
+        int last = dimensions.length - 1;
+        if (dim >= dimensions[last]) return crossovers[last];
+
+        int d = 1;
+        while (dimensions[d] < dim) d++;
+        double t = Math.log((double) dim / dimensions[d - 1]) / Math.log((double) dimensions[d] / dimensions[d - 1]);
+        return Math.exp((1 - t) * Math.log(crossovers[d - 1]) + t * Math.log(crossovers[d]));
+    }
+
+    /**
+     * Whether the sparse multiplication should be used for operands of the given dimension and densities.
+     * The work of the sparse multiplication grows with the product of the densities,
+     * so their geometric mean is compared to the crossover measured with equal densities.
+     */
+    boolean prefersSparse(int dim, double densityA, double densityB) {
+        return Math.sqrt(densityA * densityB) < crossover(dim);
+    }
+
+    /** Multiplies two dense matrices, converting them to the sparse format first if that is expected to be faster. */
+    public IntMatrix multiply(IntMatrix a, IntMatrix b) {
+        if (prefersSparse(a.getDim(), a.getDensity(), b.getDensity()))
+            return SparseMatrix.parallelMultiply(SparseMatrix.fromDense(a), SparseMatrix.fromDense(b));
+        return IntMatrix.parallelMultiplication(a, b);
+    }
+
+    /** Multiplies two sparse matrices, converting them to the dense format first if that is expected to be faster. */
+    public IntMatrix multiply(SparseMatrix a, SparseMatrix b) {
+        if (prefersSparse(a.dimension, a.getDensity(), b.getDensity()))
+            return SparseMatrix.parallelMultiply(a, b);
+        return IntMatrix.parallelMultiplication(SparseMatrix.toDense(a), SparseMatrix.toDense(b));
+    }
+
+    /** Multiplies a sparse matrix by a dense one, converting whichever one does not match the chosen kernel. */
+    public IntMatrix multiply(SparseMatrix a, IntMatrix b) {
+        if (prefersSparse(a.dimension, a.getDensity(), b.getDensity()))
+            return SparseMatrix.parallelMultiply(a, SparseMatrix.fromDense(b));
+        return IntMatrix.parallelMultiplication(SparseMatrix.toDense(a), b);
+    }
+
+    /** Multiplies a dense matrix by a sparse one, converting whichever one does not match the chosen kernel. */
+    public IntMatrix multiply(IntMatrix a, SparseMatrix b) {
+        if (prefersSparse(a.getDim(), a.getDensity(), b.getDensity()))
+            return SparseMatrix.parallelMultiply(SparseMatrix.fromDense(a), b);
+        return IntMatrix.parallelMultiplication(a, SparseMatrix.toDense(b));
+    }
+
+    @Override
+    public String toString() {
+        return "AutoMultiplication{" +
+                "\n\tdimensions=" + Arrays.toString(dimensions) +
+                ",\n\tcrossovers=" + Arrays.toString(crossovers) +
+                "\n}";
+    }
+}
@@ -0,0 +1,135 @@
+package matrices;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends and receives ints and blocks of matrices over a socket, for {@link DistributedMultiplication}.
+ * <p>
+ * A block is encoded once into a direct buffer, which the socket writes without copying it again;
+ * the same buffer is then sent to every peer that needs the block, through a duplicate of its own.
+ * Received blocks are read into a direct buffer that is reused for the next block.
+ * <p>
+ * A dense block is its dimension followed by its values in row-major order. A sparse block is its dimension
+ * and its number of values, followed by the three arrays of the compressed row format.
+ * All the ints are little-endian.
+ */
+final class BlockChannel implements AutoCloseable {
+
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final SocketChannel channel;
+    private final ByteBuffer ints = ByteBuffer.allocateDirect(16 * Integer.BYTES).order(ORDER);
+    private ByteBuffer payload = ByteBuffer.allocateDirect(0).order(ORDER);
+
+    BlockChannel(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        channel.configureBlocking(true);
+        // A header must not wait to be batched with the block that follows it.
+        channel.socket().setTcpNoDelay(true);
+    }
+
+    /** Writes a few ints, at most 16. */
+    void writeInts(int... values) throws IOException {
+        ints.clear();
+        for (int value : values) ints.putInt(value);
+        ints.flip();
+        writeFully(ints);
+    }
+
+    int readInt() throws IOException {
+        ints.clear().limit(Integer.BYTES);
+        readFully(ints);
+        return ints.getInt(0);
+    }
+
+    /** Writes an encoded block without changing the position of the buffer, so it can be written again. */
+    void write(ByteBuffer block) throws IOException {
+        writeFully(block.duplicate());
+    }
+
+    /** Writes a string as its length followed by its UTF-8 bytes. */
+    void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInts(bytes.length);
+        writeFully(ByteBuffer.wrap(bytes));
+    }
+
+    String readString() throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(readInt());
+        readFully(bytes);
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+
+    /** Encodes a square block of a dense matrix, padding with zeros the cells that are outside the matrix. */
+    static ByteBuffer encodeBlock(IntMatrix m, int firstRow, int firstCol, int blockSize) {
+        int n = m.getDim();
+        ByteBuffer block = ByteBuffer.allocateDirect(Math.toIntExact((1 + (long) blockSize * blockSize) * Integer.BYTES))
+                .order(ORDER);
+        block.putInt(blockSize);
+        IntBuffer values = block.asIntBuffer();
+        int cols = Math.max(0, Math.min(blockSize, n - firstCol));
+        for (int r = 0; r < blockSize; r++) {
+            int row = firstRow + r;
+            if (row < n && cols > 0) values.put(m.values, row * n + firstCol, cols);
+            values.position((r + 1) * blockSize);
+        }
+        return block.position(0);
+    }
+
+    /** Encodes a sparse matrix, which is usually one block of a larger matrix. */
+    static ByteBuffer encode(SparseMatrix m) {
+        int n = m.dimension, nnz = m.numberOfValues;
+        ByteBuffer block = ByteBuffer.allocateDirect(Math.toIntExact((2 + n + 2L * nnz) * Integer.BYTES)).order(ORDER);
+        block.putInt(n).putInt(nnz);
+        block.asIntBuffer().put(m.rowStarts).put(m.colIds, 0, nnz).put(m.values, 0, nnz);
+        return block.position(0);
+    }
+
+    /** Reads a dense block. */
+    IntMatrix readDense() throws IOException {
+        int n = readInt();
+        IntMatrix m = new IntMatrix(n);
+        readInts(m.values, Math.multiplyExact(n, n));
+        return m;
+    }
+
+    /** Reads a sparse block. */
+    SparseMatrix readSparse() throws IOException {
+        int n = readInt(), nnz = readInt();
+        int[] rowStarts = new int[n], colIds = new int[nnz], values = new int[nnz];
+        readInts(rowStarts, n);
+        readInts(colIds, nnz);
+        readInts(values, nnz);
+        return new SparseMatrix(n, rowStarts, colIds, values);
+    }
+
+    private void readInts(int[] into, int count) throws IOException {
+        int bytes = Math.multiplyExact(count, Integer.BYTES);
+        if (payload.capacity() < bytes) payload = ByteBuffer.allocateDirect(bytes).order(ORDER);
+        payload.clear().limit(bytes);
+        readFully(payload);
+        payload.flip();
+        payload.asIntBuffer().get(into, 0, count);
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) < 0) throw new EOFException("The connection was closed in the middle of a message");
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,197 @@
+package matrices;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A worker process of a {@link DistributedMultiplication}. It listens on a port, prints the line
+ * {@link DistributedMultiplication#PORT_PREFIX} followed by that port, and waits for the coordinator,
+ * which tells it its place in the grid and the addresses of the other workers. It then connects to the
+ * workers of its row and column (the ones with a lower rank connect to the ones with a higher rank)
+ * and multiplies blocks until the coordinator tells it to stop.
+ * <p>
+ * The blocks a worker sends to its peers are written by a thread of their own while the main thread receives
+ * the blocks of the other workers and multiplies them. As every worker reads its blocks in step order and
+ * sends its own in step order, a write that waits for a peer to read always ends.
+ * <p>
+ * Usage: java matrices.BlockWorker [port]
+ */
+public class BlockWorker {
+
+    private final int rank, gridSize;
+    /** The connection to every worker of the same row or column, by rank; null for the others and for this one. */
+    private final BlockChannel[] peers;
+    private final BlockChannel coordinator;
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "block-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private BlockWorker(int rank, int gridSize, BlockChannel[] peers, BlockChannel coordinator) {
+        this.rank = rank;
+        this.gridSize = gridSize;
+        this.peers = peers;
+        this.coordinator = coordinator;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length > 1) {
+            System.err.println("Usage: java matrices.BlockWorker [port]");
+            System.exit(2);
+        }
+        int port = args.length == 1 ? Integer.parseInt(args[0]) : 0;
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            System.out.println(DistributedMultiplication.PORT_PREFIX + ((InetSocketAddress) server.getLocalAddress()).getPort());
+            System.out.flush();
+            BlockWorker worker = join(server);
+            worker.run();
+        }
+    }
+
+    /** Accepts the coordinator, reads the grid from it and connects to the workers of the same row and column. */
+    private static BlockWorker join(ServerSocketChannel server) throws IOException {
+        BlockChannel coordinator = new BlockChannel(server.accept());
+        if (coordinator.readInt() != DistributedMultiplication.COORDINATOR)
+            throw new IOException("The first connection did not come from the coordinator");
+        int rank = coordinator.readInt(), gridSize = coordinator.readInt();
+        InetSocketAddress[] addresses = new InetSocketAddress[gridSize * gridSize];
+        for (int r = 0; r < addresses.length; r++) {
+            String host = coordinator.readString();
+            addresses[r] = new InetSocketAddress(host, coordinator.readInt());
+        }
+
+        BlockChannel[] peers = new BlockChannel[addresses.length];
+        int expected = 0;
+        for (int r = 0; r < addresses.length; r++) {
+            if (r == rank || !(r / gridSize == rank / gridSize || r % gridSize == rank % gridSize)) continue;
+            if (r > rank) {
+                expected++;
+                continue;
+            }
+            // The worker with the lower rank is already listening, and its backlog holds the connection
+            // until it gets to accept it.
+            peers[r] = new BlockChannel(SocketChannel.open(addresses[r]));
+            peers[r].writeInts(rank);
+        }
+        for (int accepted = 0; accepted < expected; accepted++) {
+            BlockChannel peer = new BlockChannel(server.accept());
+            int r = peer.readInt();
+            if (r <= rank || r >= peers.length || peers[r] != null) throw new IOException("Unexpected peer " + r);
+            peers[r] = peer;
+        }
+        return new BlockWorker(rank, gridSize, peers, coordinator);
+    }
+
+    /** Multiplies blocks until the coordinator says stop. */
+    private void run() throws IOException, InterruptedException, ExecutionException {
+        try {
+            int format;
+            while ((format = coordinator.readInt()) != DistributedMultiplication.STOP) {
+                if (format == DistributedMultiplication.FILES) {
+                    multiplyFiles();
+                    coordinator.writeInts(DistributedMultiplication.FILES);
+                    continue;
+                }
+                IntMatrix product = format == DistributedMultiplication.DENSE ? multiplyDense() : multiplySparse();
+                coordinator.write(BlockChannel.encodeBlock(product, 0, 0, product.getDim()));
+            }
+        }
+        finally {
+            sender.shutdownNow();
+            for (BlockChannel peer : peers)
+                if (peer != null) peer.close();
+            coordinator.close();
+        }
+    }
+
+    private IntMatrix multiplyDense() throws IOException, InterruptedException, ExecutionException {
+        return multiplyDense(coordinator.readDense(), coordinator.readDense());
+    }
+
+    /** Reads the blocks of this worker from the operand files, and writes its block of the product to the product file. */
+    private void multiplyFiles() throws IOException, InterruptedException, ExecutionException {
+        String a = coordinator.readString(), b = coordinator.readString(), product = coordinator.readString();
+        int firstRow, firstCol;
+        IntMatrix aBlock, bBlock;
+        try (MappedIntMatrix left = MappedIntMatrix.open(Paths.get(a));
+             MappedIntMatrix right = MappedIntMatrix.open(Paths.get(b))) {
+            int blockSize = DistributedMultiplication.blockSize(left.getDim(), gridSize);
+            firstRow = rank / gridSize * blockSize;
+            firstCol = rank % gridSize * blockSize;
+            aBlock = left.getBlock(firstRow, firstCol, blockSize);
+            bBlock = right.getBlock(firstRow, firstCol, blockSize);
+        }
+        IntMatrix productBlock = multiplyDense(aBlock, bBlock);
+        try (MappedIntMatrix out = MappedIntMatrix.openWritable(Paths.get(product))) {
+            out.setBlock(productBlock, firstRow, firstCol);
+        }
+    }
+
+    private IntMatrix multiplyDense(IntMatrix a, IntMatrix b) throws IOException, InterruptedException, ExecutionException {
+        Future<?> sent = send(BlockChannel.encodeBlock(a, 0, 0, a.getDim()), BlockChannel.encodeBlock(b, 0, 0, b.getDim()));
+        IntMatrix product = new IntMatrix(a.getDim());
+        int row = rank / gridSize, col = rank % gridSize;
+        for (int step = 0; step < gridSize; step++) {
+            IntMatrix left = col == step ? a : peers[row * gridSize + step].readDense();
+            IntMatrix right = row == step ? b : peers[step * gridSize + col].readDense();
+            IntMatrix.multiplyAdd(left, right, product, Workers.defaultParallelism());
+        }
+        sent.get();
+        return product;
+    }
+
+    private IntMatrix multiplySparse() throws IOException, InterruptedException, ExecutionException {
+        SparseMatrix a = coordinator.readSparse(), b = coordinator.readSparse();
+        Future<?> sent = send(BlockChannel.encode(a), BlockChannel.encode(b));
+        IntMatrix product = new IntMatrix(a.dimension);
+        int row = rank / gridSize, col = rank % gridSize;
+        for (int step = 0; step < gridSize; step++) {
+            SparseMatrix left = col == step ? a : peers[row * gridSize + step].readSparse();
+            SparseMatrix right = row == step ? b : peers[step * gridSize + col].readSparse();
+            SparseMatrix.multiplyAdd(left, right, product, Workers.defaultParallelism());
+        }
+        sent.get();
+        return product;
+    }
+
+    /**
+     * Sends the block of A to the rest of the row (in step col) and the block of B to the rest of the column
+     * (in step row), in step order, on the sender thread.
+     */
+    private Future<?> send(ByteBuffer a, ByteBuffer b) {
+        int row = rank / gridSize, col = rank % gridSize;
+        return sender.submit(() -> {
+            if (col <= row) {
+                sendToRow(a);
+                sendToColumn(b);
+            }
+            else {
+                sendToColumn(b);
+                sendToRow(a);
+            }
+            return null;
+        });
+    }
+
+    private void sendToRow(ByteBuffer block) throws IOException {
+        int row = rank / gridSize;
+        for (int c = 0; c < gridSize; c++)
+            if (row * gridSize + c != rank) peers[row * gridSize + c].write(block);
+    }
+
+    private void sendToColumn(ByteBuffer block) throws IOException {
+        int col = rank % gridSize;
+        for (int r = 0; r < gridSize; r++)
+            if (r * gridSize + col != rank) peers[r * gridSize + col].write(block);
+    }
+}
@@ -0,0 +1,145 @@
+package matrices;
+
+import java.util.Arrays;
+
+/**
+ * A Block Sparse Row implementation of a sparse square matrix.
+ * The matrix is cut into square blocks of b x b cells, and every block holding at least one value is stored
+ * whole, in row-major order, in the compressed row format of blocks. One column index serves b * b cells,
+ * and the kernel of a block is a small dense multiplication with no indirection.
+ * <p>
+ * It pays for itself when the values come in clusters (as in matrices from finite element meshes);
+ * for values scattered at random, nearly every stored block holds a single value.
+ * The blocks on the right and bottom edges are cut short when the dimension is not a multiple of b.
+ */
+public class BsrMatrix {
+
+    public static final int DEFAULT_BLOCK_SIZE = 4;
+
+    private final int dimension;
+    private final int blockSize;
+    /** The index of the first block of each block row, with the number of blocks last. */
+    private final int[] blockRowStarts;
+    private final int[] blockColIds;
+    /** The cells of block k start at k * blockSize * blockSize. */
+    private final int[] values;
+    private final int numberOfValues;
+
+    private BsrMatrix(int dimension, int blockSize, int[] blockRowStarts, int[] blockColIds,
+                      int[] values, int numberOfValues) {
+        this.dimension = dimension;
+        this.blockSize = blockSize;
+        this.blockRowStarts = blockRowStarts;
+        this.blockColIds = blockColIds;
+        this.values = values;
+        this.numberOfValues = numberOfValues;
+    }
+
+    /**
+     * Converts a matrix from the compressed row format with blocks of the default size.
+     *
+     * @see BsrMatrix#fromSparse(SparseMatrix, int)
+     */
+    public static BsrMatrix fromSparse(SparseMatrix m) {
+        return fromSparse(m, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Converts a matrix from the compressed row format.
+     *
+     * @param blockSize the dimension of a block (b)
+     * @throws ArithmeticException if the stored blocks do not fit in an array
+     */
+    public static BsrMatrix fromSparse(SparseMatrix m, int blockSize) {
+        if (blockSize <= 0) throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        int n = m.dimension;
+        int blockRows = (n + blockSize - 1) / blockSize;
+        int cells = blockSize * blockSize;
+        // marker[j] == the block row in which block column j was last seen.
+        int[] marker = new int[blockRows];
+        Arrays.fill(marker, -1);
+
+        // Count the distinct block columns of each block row.
+        int[] blockRowStarts = new int[blockRows + 1];
+        long total = 0;
+        for (int blockRow = 0; blockRow < blockRows; blockRow++) {
+            blockRowStarts[blockRow] = Math.toIntExact(total);
+            for (int i = blockRow * blockSize; i < Math.min(n, (blockRow + 1) * blockSize); i++)
+                for (int valIndex = m.rowStarts[i]; valIndex < m.rowEnd(i); valIndex++) {
+                    int blockCol = m.colIds[valIndex] / blockSize;
+                    if (marker[blockCol] == blockRow) continue;
+                    marker[blockCol] = blockRow;
+                    total++;
+                }
+        }
+        blockRowStarts[blockRows] = Math.toIntExact(total);
+
+        int[] blockColIds = new int[(int) total];
+        int[] values = new int[Math.multiplyExact(blockColIds.length, cells)];
+        // position[j] == the index of block column j within the current block row.
+        int[] position = new int[blockRows];
+        Arrays.fill(marker, -1);
+        for (int blockRow = 0; blockRow < blockRows; blockRow++) {
+            int start = blockRowStarts[blockRow];
+            int end = start;
+            int firstRow = blockRow * blockSize;
+            for (int i = firstRow; i < Math.min(n, firstRow + blockSize); i++)
+                for (int valIndex = m.rowStarts[i]; valIndex < m.rowEnd(i); valIndex++) {
+                    int blockCol = m.colIds[valIndex] / blockSize;
+                    if (marker[blockCol] != blockRow) {
+                        marker[blockCol] = blockRow;
+                        blockColIds[end++] = blockCol;
+                    }
+                }
+            // Keep the blocks of a row in column order, like the values of a row in the compressed row format.
+            Arrays.sort(blockColIds, start, end);
+            for (int k = start; k < end; k++) position[blockColIds[k]] = k;
+            for (int i = firstRow; i < Math.min(n, firstRow + blockSize); i++)
+                for (int valIndex = m.rowStarts[i]; valIndex < m.rowEnd(i); valIndex++) {
+                    int j = m.colIds[valIndex];
+                    int block = position[j / blockSize];
+                    values[block * cells + (i - firstRow) * blockSize + j % blockSize] = m.values[valIndex];
+                }
+        }
+        return new BsrMatrix(n, blockSize, blockRowStarts, blockColIds, values, m.numberOfValues);
+    }
+
+    /**
+     * Multiplies the matrix by a vector, y = a * x, without allocating anything.
+     * Every stored block is multiplied whole, its zeros included.
+     *
+     * @param x the vector to multiply, as long as the dimension of a
+     * @param y the vector to write the product to, as long as the dimension of a
+     */
+    public static void multiply(BsrMatrix a, int[] x, int[] y) {
+        int n = a.dimension, b = a.blockSize, cells = b * b;
+        if (x.length != n || y.length != n)
+            throw new IllegalArgumentException("Vectors of length " + x.length + " and " + y.length
+                    + " do not fit a matrix of dimension " + n);
+        Arrays.fill(y, 0);
+        for (int blockRow = 0; blockRow + 1 < a.blockRowStarts.length; blockRow++) {
+            int firstRow = blockRow * b;
+            int rowsInBlock = Math.min(b, n - firstRow);
+            for (int k = a.blockRowStarts[blockRow]; k < a.blockRowStarts[blockRow + 1]; k++) {
+                int firstCol = a.blockColIds[k] * b;
+                int colsInBlock = Math.min(b, n - firstCol);
+                int offset = k * cells;
+                for (int i = 0; i < rowsInBlock; i++) {
+                    int sum = 0;
+                    for (int j = 0; j < colsInBlock; j++)
+                        sum += a.values[offset + i * b + j] * x[firstCol + j];
+                    y[firstRow + i] += sum;
+                }
+            }
+        }
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /** Returns the number of stored cells, the zeros of the blocks included, for each value of the matrix. */
+    public double getPaddingRatio() {
+        return numberOfValues == 0 ? 1 : (double) values.length / numberOfValues;
+    }
+}
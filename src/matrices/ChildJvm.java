@@ -0,0 +1,41 @@
+package matrices;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The command line of the JVMs that are started to run a part of the work: the workers of a
+ * {@link DistributedMultiplication} and of a sweep. Several of them run at once, so they only get
+ * the options of this JVM that are listed in {@link ChildJvm#INHERITED_OPTIONS}; copies of the heap size
+ * would not fit in the machine together, agents and debugging ports would clash, and flight recordings and
+ * logs would all be written to the same file. Options of their own are added by the caller.
+ */
+public final class ChildJvm {
+
+    /** The prefixes of the options that a child JVM shares with this one: modules, assertions and the collector. */
+    private static final List<String> INHERITED_OPTIONS = Arrays.asList(
+            "--add-modules", "--enable-preview", "-ea", "-enableassertions", "-XX:+Use", "-XX:-Use");
+
+    private ChildJvm() {
+    }
+
+    /** Returns the java executable of this JVM. */
+    public static String java() {
+        return Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    /** Returns the options of this JVM that a child JVM is started with. */
+    public static List<String> inheritedOptions() {
+        List<String> options = new ArrayList<>();
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments())
+            for (String inherited : INHERITED_OPTIONS)
+                if (option.startsWith(inherited)) {
+                    options.add(option);
+                    break;
+                }
+        return options;
+    }
+}
@@ -0,0 +1,63 @@
+package matrices;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static util.CommonlyUsed.DEFAULT_SEED;
+
+/**
+ * Checks {@link DistributedMultiplication} against the kernels of a single JVM. It starts a grid of workers on
+ * this machine and multiplies random dense and sparse matrices on it, on the heap and in files, with dimensions
+ * that are smaller than the grid, a multiple of it and not a multiple of it, so that the padded blocks are
+ * checked too. Every product must equal that of the tiled or the sparse kernel.
+ * <p>
+ * It prints a line for every product and exits with status 1 if any of them differs.
+ * <p>
+ * Usage: java matrices.DistributedCheck [grid size, 2 by default]
+ */
+public class DistributedCheck {
+
+    private static final int[] DIMENSIONS = {1, 50, 301};
+    private static final double[] DENSITIES = {0.01, 0.2};
+
+    public static void main(String[] args) throws IOException {
+        int gridSize = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        boolean passed = true;
+        Path directory = Files.createTempDirectory("distributed-check");
+        try (DistributedMultiplication grid = DistributedMultiplication.start(gridSize)) {
+            for (int n : DIMENSIONS)
+                for (double density : DENSITIES) {
+                    SparseMatrix a = SparseMatrix.createRandomSparse(n, density, DEFAULT_SEED);
+                    SparseMatrix b = SparseMatrix.createRandomSparse(n, density, DEFAULT_SEED + 1);
+                    IntMatrix denseA = SparseMatrix.toDense(a), denseB = SparseMatrix.toDense(b);
+                    IntMatrix expected = IntMatrix.parallelMultiplication(denseA, denseB, 1);
+
+                    passed &= check("dense", n, density, grid.multiply(denseA, denseB), expected);
+                    passed &= check("sparse", n, density, grid.multiply(a, b), expected);
+
+                    Path aFile = directory.resolve("a"), bFile = directory.resolve("b"), product = directory.resolve("c");
+                    IntMatrix.save(denseA, aFile);
+                    IntMatrix.save(denseB, bFile);
+                    grid.multiply(aFile, bFile, product);
+                    passed &= check("files", n, density, IntMatrix.load(product), expected);
+                }
+        }
+        finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+        System.out.println(passed ? "All products are correct" : "Some products are wrong");
+        if (!passed) System.exit(1);
+    }
+
+    private static boolean check(String kind, int n, double density, IntMatrix product, IntMatrix expected) {
+        boolean correct = product.getDim() == expected.getDim() && Arrays.equals(product.values, expected.values);
+        System.out.println(kind + " n=" + n + " density=" + density + ": " + (correct ? "ok" : "WRONG"));
+        return correct;
+    }
+}
@@ -0,0 +1,312 @@
+package matrices;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multiplies matrices on a grid of worker processes with the SUMMA algorithm
+ * (Scalable Universal Matrix Multiplication Algorithm).
+ * <p>
+ * The operands are cut into p x p square blocks, and worker (i, j) of the p x p grid receives blocks
+ * A(i, j) and B(i, j) and computes block C(i, j) of the product. In step k, worker (i, k) sends its block of A
+ * to every worker of row i and worker (k, j) sends its block of B to every worker of column j; every worker
+ * then adds A(i, k) * B(k, j) to its block of C with the kernels of this library. The workers talk to each
+ * other directly, over one TCP connection for every pair sharing a row or a column, and each worker holds
+ * three blocks at a time.
+ * <p>
+ * The multiplications of matrices on the heap have the coordinator scatter the operands and gather the product,
+ * so the operands and the product must still fit in the heap of the coordinator; they spread the work rather than
+ * the memory. {@link DistributedMultiplication#multiply(Path, Path, Path)} multiplies matrices in files that all
+ * the workers can reach: every worker maps and reads its own blocks of the operands and writes its block of the
+ * product into the product file, so no heap ever holds more than three blocks, and a product that does not fit
+ * in the heap of a single JVM fits in the heaps of the workers.
+ * <p>
+ * The workers are {@link BlockWorker} processes. {@link DistributedMultiplication#start(int)} starts them
+ * on this machine; {@link DistributedMultiplication#connect(int, List)} connects to workers that were started
+ * elsewhere. Either way they are kept for every multiplication until {@link DistributedMultiplication#close()}.
+ * {@link DistributedCheck} checks the products against the kernels of a single JVM.
+ * <p>
+ * When the dimension is not a multiple of p, the blocks on the right and bottom edges are padded with zeros.
+ */
+public class DistributedMultiplication implements AutoCloseable {
+
+    /** The first int of a connection to a worker, in place of the rank of a peer. */
+    static final int COORDINATOR = -1;
+    /** The first int of a job, telling the workers the format of its blocks; FILES is also the reply to such a job. */
+    static final int STOP = 0, DENSE = 1, SPARSE = 2, FILES = 3;
+    /** The line a worker prints when it is ready to be connected to. */
+    static final String PORT_PREFIX = "PORT ";
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final int gridSize;
+    private final BlockChannel[] workers;
+    private final List<Process> processes;
+
+    private DistributedMultiplication(int gridSize, BlockChannel[] workers, List<Process> processes) {
+        this.gridSize = gridSize;
+        this.workers = workers;
+        this.processes = processes;
+    }
+
+    /**
+     * Starts a grid of p x p worker processes on this machine, sharing its processors between them.
+     * They run with the class path of this JVM and those of its options that child JVMs inherit
+     * (see {@link ChildJvm}), such as the modules and the garbage collector.
+     *
+     * @param gridSize the number of workers on each side of the grid (p)
+     */
+    public static DistributedMultiplication start(int gridSize) throws IOException {
+        return start(gridSize, ChildJvm.inheritedOptions());
+    }
+
+    /**
+     * Starts a grid of p x p worker processes on this machine, sharing its processors between them.
+     * They run with the class path of this JVM and only the given options.
+     *
+     * @param gridSize      the number of workers on each side of the grid (p)
+     * @param workerOptions the options of every worker JVM, for example its heap size
+     */
+    public static DistributedMultiplication start(int gridSize, List<String> workerOptions) throws IOException {
+        checkGridSize(gridSize);
+        int numberOfWorkers = gridSize * gridSize;
+        int cores = Math.max(1, Runtime.getRuntime().availableProcessors() / numberOfWorkers);
+        List<String> command = new ArrayList<>();
+        command.add(ChildJvm.java());
+        command.addAll(workerOptions);
+        command.add("-XX:ActiveProcessorCount=" + cores);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BlockWorker.class.getName());
+
+        List<Process> processes = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (int rank = 0; rank < numberOfWorkers; rank++)
+                processes.add(new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start());
+            for (Process process : processes)
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), readPort(process)));
+            return connect(gridSize, addresses, processes);
+        }
+        catch (IOException | RuntimeException e) {
+            processes.forEach(Process::destroyForcibly);
+            throw e;
+        }
+    }
+
+    /**
+     * Connects to a grid of p x p workers that are already running, for example on other machines.
+     *
+     * @param gridSize the number of workers on each side of the grid (p)
+     * @param workers  the addresses of the workers, row by row; they must also be reachable from each other
+     * @see BlockWorker
+     */
+    public static DistributedMultiplication connect(int gridSize, List<InetSocketAddress> workers) throws IOException {
+        checkGridSize(gridSize);
+        return connect(gridSize, workers, new ArrayList<>());
+    }
+
+    private static DistributedMultiplication connect(int gridSize, List<InetSocketAddress> addresses,
+                                                     List<Process> processes) throws IOException {
+        int numberOfWorkers = gridSize * gridSize;
+        if (addresses.size() != numberOfWorkers)
+            throw new IllegalArgumentException("A grid of " + gridSize + " x " + gridSize + " needs "
+                    + numberOfWorkers + " workers, not " + addresses.size());
+
+        // Connect to every worker before telling any of them about its peers,
+        // so that the first connection a worker accepts is always the coordinator's.
+        BlockChannel[] workers = new BlockChannel[numberOfWorkers];
+        try {
+            for (int rank = 0; rank < numberOfWorkers; rank++) {
+                workers[rank] = new BlockChannel(SocketChannel.open(addresses.get(rank)));
+                workers[rank].writeInts(COORDINATOR);
+            }
+            for (int rank = 0; rank < numberOfWorkers; rank++) {
+                workers[rank].writeInts(rank, gridSize);
+                for (InetSocketAddress address : addresses) {
+                    workers[rank].writeString(address.getHostString());
+                    workers[rank].writeInts(address.getPort());
+                }
+            }
+        }
+        catch (IOException e) {
+            for (BlockChannel worker : workers)
+                if (worker != null) worker.close();
+            throw e;
+        }
+        return new DistributedMultiplication(gridSize, workers, processes);
+    }
+
+    private static void checkGridSize(int gridSize) {
+        if (gridSize <= 0) throw new IllegalArgumentException("Grid size must be positive: " + gridSize);
+    }
+
+    /** Reads the port of a worker from the line it prints once it listens. */
+    private static int readPort(Process process) throws IOException {
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = output.readLine()) != null)
+            if (line.startsWith(PORT_PREFIX)) return Integer.parseInt(line.substring(PORT_PREFIX.length()).trim());
+        throw new IOException("A worker exited before it started listening");
+    }
+
+    /**
+     * Multiplies two dense matrices on the grid. Each worker multiplies its blocks with the parallel tiled kernel.
+     *
+     * @throws IOException if a worker fails or cannot be reached
+     */
+    public IntMatrix multiply(IntMatrix a, IntMatrix b) throws IOException {
+        int n = SparseMatrix.checkDimensions(a.getDim(), b.getDim());
+        int blockSize = blockSize(n);
+        for (int rank = 0; rank < workers.length; rank++) {
+            int firstRow = rank / gridSize * blockSize, firstCol = rank % gridSize * blockSize;
+            workers[rank].writeInts(DENSE);
+            workers[rank].write(BlockChannel.encodeBlock(a, firstRow, firstCol, blockSize));
+            workers[rank].write(BlockChannel.encodeBlock(b, firstRow, firstCol, blockSize));
+        }
+        return gather(n, blockSize);
+    }
+
+    /**
+     * Multiplies two sparse matrices on the grid. Each worker multiplies its blocks with the parallel sparse kernel,
+     * and its block of the product is dense, like the product of that kernel.
+     *
+     * @throws IOException if a worker fails or cannot be reached
+     */
+    public IntMatrix multiply(SparseMatrix a, SparseMatrix b) throws IOException {
+        int n = SparseMatrix.checkDimensions(a.dimension, b.dimension);
+        int blockSize = blockSize(n);
+        for (int blockRow = 0; blockRow < gridSize; blockRow++) {
+            SparseMatrix[] aBlocks = splitBlockRow(a, blockRow * blockSize, blockSize);
+            SparseMatrix[] bBlocks = splitBlockRow(b, blockRow * blockSize, blockSize);
+            for (int blockCol = 0; blockCol < gridSize; blockCol++) {
+                BlockChannel worker = workers[blockRow * gridSize + blockCol];
+                worker.writeInts(SPARSE);
+                worker.write(BlockChannel.encode(aBlocks[blockCol]));
+                worker.write(BlockChannel.encode(bBlocks[blockCol]));
+            }
+        }
+        return gather(n, blockSize);
+    }
+
+    /**
+     * Multiplies two dense matrices in files, in the format of {@link MappedIntMatrix}, into a new file.
+     * Every worker reads its blocks of the operands from the files and writes its block of the product to the
+     * product file, so none of the three matrices passes through this JVM. The files must be reachable under
+     * the same paths by every worker; workers on other machines need a shared file system whose memory-mapped
+     * files the machines see the same way.
+     *
+     * @param product the file to hold the product; an existing file is replaced
+     * @throws IOException if a file cannot be read or written, or a worker fails or cannot be reached
+     */
+    public void multiply(Path a, Path b, Path product) throws IOException {
+        int n;
+        try (MappedIntMatrix left = MappedIntMatrix.open(a); MappedIntMatrix right = MappedIntMatrix.open(b)) {
+            n = SparseMatrix.checkDimensions(left.getDim(), right.getDim());
+        }
+        MappedIntMatrix.create(product, n).close();
+        for (BlockChannel worker : workers) {
+            worker.writeInts(FILES);
+            worker.writeString(a.toAbsolutePath().toString());
+            worker.writeString(b.toAbsolutePath().toString());
+            worker.writeString(product.toAbsolutePath().toString());
+        }
+        for (int rank = 0; rank < workers.length; rank++)
+            if (workers[rank].readInt() != FILES) throw new IOException("Worker " + rank + " did not write its block");
+    }
+
+    private int blockSize(int n) {
+        return blockSize(n, gridSize);
+    }
+
+    /** Returns the dimension of the blocks of a matrix of dimension n on a grid of p x p workers. */
+    static int blockSize(int n, int gridSize) {
+        return Math.max(1, (n + gridSize - 1) / gridSize);
+    }
+
+    /** Cuts the rows [firstRow, firstRow + blockSize) of a sparse matrix into p square blocks. */
+    private SparseMatrix[] splitBlockRow(SparseMatrix m, int firstRow, int blockSize) {
+        int lastRow = Math.min(m.dimension, firstRow + blockSize);
+        int[] counts = new int[gridSize];
+        for (int i = firstRow; i < lastRow; i++)
+            for (int valIndex = m.rowStarts[i]; valIndex < m.rowEnd(i); valIndex++)
+                counts[m.colIds[valIndex] / blockSize]++;
+
+        SparseMatrix[] blocks = new SparseMatrix[gridSize];
+        int[][] rowStarts = new int[gridSize][blockSize], colIds = new int[gridSize][], values = new int[gridSize][];
+        int[] filled = new int[gridSize];
+        for (int blockCol = 0; blockCol < gridSize; blockCol++) {
+            colIds[blockCol] = new int[counts[blockCol]];
+            values[blockCol] = new int[counts[blockCol]];
+        }
+        for (int r = 0; r < blockSize; r++) {
+            for (int blockCol = 0; blockCol < gridSize; blockCol++)
+                rowStarts[blockCol][r] = filled[blockCol];
+            int i = firstRow + r;
+            if (i >= lastRow) continue;
+            // The columns of a row are in increasing order, so they stay in order within every block.
+            for (int valIndex = m.rowStarts[i]; valIndex < m.rowEnd(i); valIndex++) {
+                int blockCol = m.colIds[valIndex] / blockSize;
+                int at = filled[blockCol]++;
+                colIds[blockCol][at] = m.colIds[valIndex] - blockCol * blockSize;
+                values[blockCol][at] = m.values[valIndex];
+            }
+        }
+        for (int blockCol = 0; blockCol < gridSize; blockCol++)
+            blocks[blockCol] = new SparseMatrix(blockSize, rowStarts[blockCol], colIds[blockCol], values[blockCol]);
+        return blocks;
+    }
+
+    /** Reads the block of the product computed by every worker and puts them together, leaving out the padding. */
+    private IntMatrix gather(int n, int blockSize) throws IOException {
+        IntMatrix product = new IntMatrix(n);
+        for (int rank = 0; rank < workers.length; rank++) {
+            IntMatrix block = workers[rank].readDense();
+            int firstRow = rank / gridSize * blockSize, firstCol = rank % gridSize * blockSize;
+            int cols = Math.min(blockSize, n - firstCol);
+            // A small matrix may leave the last blocks of the grid entirely outside of it.
+            if (cols <= 0) continue;
+            for (int r = 0; r < blockSize && firstRow + r < n; r++)
+                System.arraycopy(block.values, r * blockSize, product.values, (firstRow + r) * n + firstCol, cols);
+        }
+        return product;
+    }
+
+    /** Tells the workers to exit, and waits for the ones that were started by {@link DistributedMultiplication#start(int)}. */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (BlockChannel worker : workers) {
+            try {
+                worker.writeInts(STOP);
+                worker.close();
+            }
+            catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) process.destroyForcibly();
+            }
+            catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /** Returns the number of workers on each side of the grid. */
+    public int getGridSize() {
+        return gridSize;
+    }
+}
@@ -0,0 +1,85 @@
+package matrices;
+
+import java.util.Arrays;
+
+/**
+ * An ELLPACK implementation of a sparse square matrix.
+ * Every row is padded to the length of the longest row, so the matrix is stored as two dense
+ * n x width arrays of columns and values. The arrays are stored column by column: the k-th value
+ * of every row comes before the (k+1)-th value of any row, so the inner loop of the multiplication
+ * walks consecutive rows with a fixed stride of one, which the JIT can vectorise.
+ * <p>
+ * The padding holds the value 0 in column 0, so it can be multiplied like any other value.
+ * It pays for itself when the rows have about the same length; a single long row makes every row that long.
+ *
+ * @see SellMatrix for a format that pads only within small groups of rows
+ */
+public class EllMatrix {
+
+    private final int dimension;
+    private final int width;
+    /** The k-th value of row i is at k * dimension + i. */
+    private final int[] colIds;
+    private final int[] values;
+    private final int numberOfValues;
+
+    private EllMatrix(int dimension, int width, int[] colIds, int[] values, int numberOfValues) {
+        this.dimension = dimension;
+        this.width = width;
+        this.colIds = colIds;
+        this.values = values;
+        this.numberOfValues = numberOfValues;
+    }
+
+    /**
+     * Converts a matrix from the compressed row format.
+     *
+     * @throws ArithmeticException if the padded arrays do not fit in an array
+     */
+    public static EllMatrix fromSparse(SparseMatrix m) {
+        int n = m.dimension;
+        int width = 0;
+        for (int i = 0; i < n; i++)
+            width = Math.max(width, m.rowEnd(i) - m.rowStarts[i]);
+
+        int[] colIds = new int[Math.multiplyExact(n, width)];
+        int[] values = new int[colIds.length];
+        for (int i = 0; i < n; i++) {
+            int k = 0;
+            for (int valIndex = m.rowStarts[i]; valIndex < m.rowEnd(i); valIndex++, k++) {
+                colIds[k * n + i] = m.colIds[valIndex];
+                values[k * n + i] = m.values[valIndex];
+            }
+        }
+        return new EllMatrix(n, width, colIds, values, m.numberOfValues);
+    }
+
+    /**
+     * Multiplies the matrix by a vector, y = a * x, without allocating anything.
+     * The padding is multiplied along with the values.
+     *
+     * @param x the vector to multiply, as long as the dimension of a
+     * @param y the vector to write the product to, as long as the dimension of a
+     */
+    public static void multiply(EllMatrix a, int[] x, int[] y) {
+        int n = a.dimension;
+        if (x.length != n || y.length != n)
+            throw new IllegalArgumentException("Vectors of length " + x.length + " and " + y.length
+                    + " do not fit a matrix of dimension " + n);
+        Arrays.fill(y, 0);
+        for (int k = 0; k < a.width; k++) {
+            int offset = k * n;
+            for (int i = 0; i < n; i++)
+                y[i] += a.values[offset + i] * x[a.colIds[offset + i]];
+        }
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /** Returns the number of stored cells, padding included, for each value of the matrix. */
+    public double getPaddingRatio() {
+        return numberOfValues == 0 ? 1 : (double) dimension * width / numberOfValues;
+    }
+}
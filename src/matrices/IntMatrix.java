@@ -1,17 +1,51 @@
 package matrices;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Random;
 
 /**
  * Represents a Matrix of Integers.
  * Also contains the basic multiplication method.
+ * The values are kept in a single row-major array, so that walking along a row never leaves the array.
  *
  * @author Susmit Sarkar
  * @version 1.0
  */
 public class IntMatrix {
 
-    private int[][] values;
+    /** The number of rows of a that the tiled kernel multiplies at the same time (the register block). */
+    private static final int REGISTER_BLOCK = 4;
+
+    /**
+     * The number of rows of b in one tile of the tiled multiplication.
+     * Together with {@link IntMatrix#tileWidth} this should fit in the L2 cache.
+     */
+    private static int tileDepth = 256;
+
+    /**
+     * The number of columns of b in one tile of the tiled multiplication.
+     * A row of this width, for each row in the register block, should fit in the L1 cache.
+     */
+    private static int tileWidth = 64;
+
+    /** Matrices with a smaller dimension are multiplied on the calling thread by the parallel kernel. */
+    private static int sequentialThreshold = 128;
+
+    /** The parallel kernel splits the rows of the result until a task has at most this many rows. */
+    private static int rowsPerTask = 16;
+
+    /** The Strassen multiplication uses the classical kernel for blocks no larger than this. */
+    private static int strassenLeafSize = 64;
+
+    /**
+     * Whether the Vector API kernel can be used.
+     * Set to false the first time the kernel cannot be loaded or the species has a single lane.
+     */
+    private static boolean vectorKernelAvailable = true;
+
+    private final int dim;
+    final int[] values;
 
     /**
      * Creates a square matrix of the given dimension.
@@ -22,17 +56,60 @@ public class IntMatrix {
      * @return the generated matrix
      */
     public static IntMatrix createRandom(int dim, double density) {
+        return createRandom(dim, density, new Random());
+    }
+
+    /**
+     * Creates a square matrix of the given dimension, filled with random numbers according to the given density.
+     * The same seed gives the same matrix, in every JVM.
+     *
+     * @param dim     the dimension of the matrix
+     * @param density the density of the matrix (a value between 0 and 1 indicating the probability of a non-zero value)
+     * @param seed    the seed of the random numbers
+     * @return the generated matrix
+     */
+    public static IntMatrix createRandom(int dim, double density, long seed) {
+        return createRandom(dim, density, new Random(seed));
+    }
+
+    private static IntMatrix createRandom(int dim, double density, Random r) {
+        KernelEvent event = KernelEvent.start("dense", KernelEvent.GENERATE, dim, 1);
         IntMatrix m = new IntMatrix(dim);
-        Random r = new Random();
+        long nonZeros = 0;
         for (int i = 0; i < dim; i++)
-            for (int j = 0; j < dim; j++)
-                m.set(i, j, r.nextDouble() >= density ? 0 : r.nextInt());
+            for (int j = 0; j < dim; j++) {
+                int value = r.nextDouble() >= density ? 0 : r.nextInt();
+                m.set(i, j, value);
+                if (value != 0) nonZeros++;
+            }
+        event.finish(m.values.length == 0 ? 0 : (double) nonZeros / m.values.length, nonZeros);
         return m;
     }
 
+    /**
+     * Writes the matrix to a file in the binary format of {@link MappedIntMatrix}.
+     * An existing file is replaced.
+     */
+    public static void save(IntMatrix m, Path file) throws IOException {
+        KernelEvent event = KernelEvent.start("dense", KernelEvent.WRITE, m.getDim(), 1);
+        MappedIntMatrix.from(m, file).close();
+        event.finish(m);
+    }
+
+    /**
+     * Reads a matrix from a file in the binary format of {@link MappedIntMatrix}.
+     * The file is memory-mapped and its values are copied onto the heap as they are, without parsing.
+     */
+    public static IntMatrix load(Path file) throws IOException {
+        try (MappedIntMatrix mapped = MappedIntMatrix.open(file)) {
+            return mapped.toIntMatrix();
+        }
+    }
+
     /** Performs the basic multiplication of the given matrices. */
     public static IntMatrix basicMultiplication(IntMatrix a, IntMatrix b) {
         int dim = a.getDim();
+        KernelEvent event = KernelEvent.start("basic", KernelEvent.NUMERIC, dim, 1);
         IntMatrix result = new IntMatrix(dim);
 
         for (int i = 0; i < dim; i++) {
@@ -45,6 +122,7 @@ public class IntMatrix {
             }
         }
 
+        event.finish();
         return result;
     }
 
@@ -55,6 +133,7 @@ public class IntMatrix {
      */
     public static IntMatrix minorOptimizationMultiplication(IntMatrix a, IntMatrix b) {
         int dim = a.getDim();
+        KernelEvent event = KernelEvent.start("minor", KernelEvent.NUMERIC, dim, 1);
         IntMatrix result = new IntMatrix(dim);
 
         for (int i = 0; i < dim; i++) {
@@ -63,40 +142,241 @@ public class IntMatrix {
                 if (a.get(i, k) == 0) continue;
 
                 for (int j = 0; j < dim; j++)
-                    result.values[i][j] += a.get(i, k) * b.get(k, j);
+                    result.values[i * dim + j] += a.get(i, k) * b.get(k, j);
+            }
+        }
+
+        event.finish();
+        return result;
+    }
+
+    /**
+     * Sets the tile sizes used by {@link IntMatrix#tiledMultiplication(IntMatrix, IntMatrix)}.
+     *
+     * @param depth the number of rows of b in a tile
+     * @param width the number of columns of b in a tile
+     */
+    public static void setTileSizes(int depth, int width) {
+        if (depth < 1 || width < 1)
+            throw new IllegalArgumentException("Tile sizes must be positive: " + depth + "x" + width);
+        tileDepth = depth;
+        tileWidth = width;
+    }
+
+    /**
+     * A cache-blocked implementation of the multiplication.
+     * b is split into tiles of {@link IntMatrix#tileDepth} rows and {@link IntMatrix#tileWidth} columns.
+     * Each tile is used for all rows of a before moving to the next one, so it stays in cache.
+     * Within a tile, {@link IntMatrix#REGISTER_BLOCK} rows of the result are updated at once,
+     * so that every value read from b is used that many times.
+     */
+    public static IntMatrix tiledMultiplication(IntMatrix a, IntMatrix b) {
+        int dim = a.getDim();
+        KernelEvent event = KernelEvent.start("tiled", KernelEvent.NUMERIC, dim, 1);
+        IntMatrix result = new IntMatrix(dim);
+        multiplyRows(a.values, b.values, result.values, dim, 0, dim);
+        event.finish();
+        return result;
+    }
+
+    /**
+     * Sets when {@link IntMatrix#parallelMultiplication(IntMatrix, IntMatrix, int)} splits its work.
+     *
+     * @param sequentialDim matrices with a smaller dimension are multiplied on one thread
+     * @param rows          the largest number of result rows given to a single task
+     */
+    public static void setParallelThresholds(int sequentialDim, int rows) {
+        if (sequentialDim < 0 || rows < 1)
+            throw new IllegalArgumentException("Invalid thresholds: " + sequentialDim + ", " + rows);
+        sequentialThreshold = sequentialDim;
+        rowsPerTask = rows;
+    }
+
+    /**
+     * Performs the tiled multiplication using as many threads as there are available processors.
+     *
+     * @see IntMatrix#parallelMultiplication(IntMatrix, IntMatrix, int)
+     */
+    public static IntMatrix parallelMultiplication(IntMatrix a, IntMatrix b) {
+        return parallelMultiplication(a, b, Workers.defaultParallelism());
+    }
+
+    /**
+     * A multi-threaded version of the tiled multiplication.
+     * The rows of the result are split into blocks that are run in a {@link java.util.concurrent.ForkJoinPool}.
+     * Each block writes to its own rows of the result, so no synchronization is needed.
+     * Matrices smaller than {@link IntMatrix#sequentialThreshold} are multiplied on the calling thread.
+     *
+     * @param parallelism the number of threads to use
+     */
+    public static IntMatrix parallelMultiplication(IntMatrix a, IntMatrix b, int parallelism) {
+        int dim = a.getDim();
+        if (dim < sequentialThreshold || parallelism == 1)
+            return tiledMultiplication(a, b);
+
+        KernelEvent event = KernelEvent.start("parallel", KernelEvent.NUMERIC, dim, parallelism);
+        IntMatrix result = new IntMatrix(dim);
+        multiplyAdd(a, b, result, parallelism);
+        event.finish();
+        return result;
+    }
+
+    /** Adds a * b to c with the tiled kernel, splitting the rows of c between the given number of threads. */
+    static void multiplyAdd(IntMatrix a, IntMatrix b, IntMatrix c, int parallelism) {
+        int dim = a.getDim();
+        int[] av = a.values, bv = b.values, cv = c.values;
+        Workers.parallelFor(parallelism, 0, dim, rowsPerTask,
+                (from, to) -> multiplyRows(av, bv, cv, dim, from, to));
+    }
+
+    /**
+     * Sets the largest block that {@link IntMatrix#strassenMultiplication(IntMatrix, IntMatrix)}
+     * multiplies with the classical kernel instead of recursing further.
+     */
+    public static void setStrassenLeafSize(int leafSize) {
+        if (leafSize < 1)
+            throw new IllegalArgumentException("Leaf size must be positive: " + leafSize);
+        strassenLeafSize = leafSize;
+    }
+
+    /**
+     * A sub-cubic multiplication using the Strassen-Winograd recursion.
+     * Matrices no larger than the leaf size are multiplied with the tiled multiplication.
+     *
+     * @see Strassen
+     */
+    public static IntMatrix strassenMultiplication(IntMatrix a, IntMatrix b) {
+        int dim = a.getDim();
+        if (dim <= strassenLeafSize)
+            return tiledMultiplication(a, b);
+
+        KernelEvent event = KernelEvent.start("strassen", KernelEvent.NUMERIC, dim, 1);
+        IntMatrix result = new IntMatrix(dim);
+        Strassen.multiply(a.values, b.values, result.values, dim, strassenLeafSize);
+        event.finish();
+        return result;
+    }
+
+    /**
+     * An explicitly vectorized version of {@link IntMatrix#minorOptimizationMultiplication(IntMatrix, IntMatrix)}.
+     * If the Vector API is not available (the jdk.incubator.vector module was not added)
+     * or the hardware has no vector registers, the same loops are run with scalar code.
+     *
+     * @see VectorKernel
+     */
+    public static IntMatrix vectorMultiplication(IntMatrix a, IntMatrix b) {
+        int dim = a.getDim();
+        KernelEvent event = KernelEvent.start("vector", KernelEvent.NUMERIC, dim, 1);
+        IntMatrix result = new IntMatrix(dim);
+        if (vectorKernelAvailable) {
+            try {
+                if (VectorKernel.isSupported()) {
+                    VectorKernel.multiply(a.values, b.values, result.values, dim);
+                    event.finish();
+                    return result;
+                }
             }
+            catch (LinkageError e) {
+                // The incubator module is missing, so the kernel class cannot be linked.
+            }
+            vectorKernelAvailable = false;
         }
 
+        multiplyRows(a.values, b.values, result.values, dim, 0, dim);
+        event.finish();
         return result;
     }
 
+    /**
+     * Runs the tiled kernel for the rows of the result in the range [from, to).
+     * The ranges of different calls do not overlap in the result, so they may run at the same time.
+     */
+    static void multiplyRows(int[] a, int[] b, int[] c, int dim, int from, int to) {
+        int depth = tileDepth;
+        int width = tileWidth;
+        for (int kk = 0; kk < dim; kk += depth) {
+            int kEnd = Math.min(kk + depth, dim);
+            for (int jj = 0; jj < dim; jj += width) {
+                int jEnd = Math.min(jj + width, dim);
+                int i = from;
+                for (; i + REGISTER_BLOCK <= to; i += REGISTER_BLOCK)
+                    blockKernel(a, b, c, dim, i, kk, kEnd, jj, jEnd);
+                for (; i < to; i++)
+                    rowKernel(a, b, c, dim, i, kk, kEnd, jj, jEnd);
+            }
+        }
+    }
+
+    /** Updates four consecutive rows of c, starting at row i, with one tile of b. */
+    private static void blockKernel(int[] a, int[] b, int[] c, int dim,
+                                    int i, int kk, int kEnd, int jj, int jEnd) {
+        int r0 = i * dim, r1 = r0 + dim, r2 = r1 + dim, r3 = r2 + dim;
+        for (int k = kk; k < kEnd; k++) {
+            int a0 = a[r0 + k], a1 = a[r1 + k], a2 = a[r2 + k], a3 = a[r3 + k];
+            // Skip zeros.
+            if ((a0 | a1 | a2 | a3) == 0) continue;
+
+            int bk = k * dim;
+            for (int j = jj; j < jEnd; j++) {
+                int bkj = b[bk + j];
+                c[r0 + j] += a0 * bkj;
+                c[r1 + j] += a1 * bkj;
+                c[r2 + j] += a2 * bkj;
+                c[r3 + j] += a3 * bkj;
+            }
+        }
+    }
+
+    /** Updates row i of c with one tile of b. Used for the rows left over after the register blocks. */
+    private static void rowKernel(int[] a, int[] b, int[] c, int dim,
+                                  int i, int kk, int kEnd, int jj, int jEnd) {
+        int ri = i * dim;
+        for (int k = kk; k < kEnd; k++) {
+            int aik = a[ri + k];
+            if (aik == 0) continue;
+
+            int bk = k * dim;
+            for (int j = jj; j < jEnd; j++)
+                c[ri + j] += aik * b[bk + j];
+        }
+    }
+
     /** Creates a square matrix with the given dimension. */
     IntMatrix(int dim) {
-        this.values = new int[dim][dim];
+        this.dim = dim;
+        this.values = new int[Math.multiplyExact(dim, dim)];
     }
 
     /** Returns the dimension of the matrix. */
-    private int getDim() {
-        return values.length;
+    int getDim() {
+        return dim;
+    }
+
+    /** Returns the proportion of cells that hold a non-zero value. */
+    double getDensity() {
+        if (dim == 0) return 0;
+        long nonZeros = 0;
+        for (int value : values)
+            if (value != 0) nonZeros++;
+        return (double) nonZeros / values.length;
     }
 
     /** Update the value stored at the specified location. */
     void set(int i, int j, int val) {
-        values[i][j] = val;
+        values[i * dim + j] = val;
     }
 
     /** Get the value stored at the specified location. */
     int get(int i, int j) {
-        return values[i][j];
+        return values[i * dim + j];
     }
 
     /** A string representation of the matrix. */
     public String toString() {
-        int dim = values.length;
         StringBuilder b = new StringBuilder();
         for (int i = 0; i < dim; i++) {
             for (int j = 0; j < dim; j++) {
-                b.append(values[i][j]);
+                b.append(get(i, j));
                 b.append(" ");
             }
             b.append("\n");
@@ -0,0 +1,112 @@
+package matrices;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one phase of a kernel: generating a matrix, the symbolic or numeric pass
+ * of a multiplication, or writing a matrix or a result out. In a recording it lines up with the JIT,
+ * garbage collection and safepoint events of the same time.
+ * <p>
+ * When no recording has the event enabled, starting and finishing it does next to nothing.
+ * The density and number of values of a dense matrix take a pass over it to count, which would fall inside
+ * the time measured for a kernel; so the kernels whose operands are all dense record them as unknown, and
+ * the event of the whole run, which is not timed, has the density of the run. The density of a written matrix
+ * is counted only for events that are recorded, and after the event has ended.
+ * <p>
+ * Usage:
+ * <pre>
+ * KernelEvent event = KernelEvent.start("tiled", KernelEvent.NUMERIC, dim, 1);
+ * // ... the kernel ...
+ * event.finish(density, values);
+ * </pre>
+ */
+@Name("matrices.Kernel")
+@Label("Matrix Kernel")
+@Category("Matrices")
+@Description("A phase of a matrix kernel")
+@StackTrace(false)
+public final class KernelEvent extends Event {
+
+    public static final String GENERATE = "generate";
+    public static final String SYMBOLIC = "symbolic";
+    public static final String NUMERIC = "numeric";
+    public static final String WRITE = "write";
+    /** A whole benchmark run: generating its inputs and the timed kernel. */
+    public static final String RUN = "run";
+
+    @Label("Method")
+    String method;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Dimension")
+    int dimension;
+
+    @Label("Density")
+    @Description("The density of the matrix the phase works on: the generated or written one, or the sparse operand"
+            + " of a kernel (the left one if both are); NaN for kernels with only dense operands")
+    double density;
+
+    @Label("Values")
+    @Description("The number of values (non-zeros) of the same matrix, or -1 if the density is NaN")
+    long values;
+
+    @Label("Threads")
+    int threads;
+
+    private KernelEvent() {
+    }
+
+    /** Starts the event of a phase. */
+    public static KernelEvent start(String method, String phase, int dimension, int threads) {
+        KernelEvent event = new KernelEvent();
+        if (event.isEnabled()) {
+            event.method = method;
+            event.phase = phase;
+            event.dimension = dimension;
+            event.threads = threads;
+            event.begin();
+        }
+        return event;
+    }
+
+    /** Ends the phase and records it, if it is recorded at all. */
+    public void finish(double density, long values) {
+        end();
+        if (!shouldCommit()) return;
+        this.density = density;
+        this.values = values;
+        commit();
+    }
+
+    /** Ends the phase of a kernel whose operands are all dense, and records it without their density. */
+    void finish() {
+        finish(Double.NaN, -1);
+    }
+
+    /**
+     * Ends the phase and records it with the density and number of values of the dense matrix.
+     * Only for phases that are not timed, as it takes a pass over the matrix.
+     */
+    void finish(IntMatrix m) {
+        end();
+        if (!shouldCommit()) return;
+        long nonZeros = 0;
+        for (int value : m.values)
+            if (value != 0) nonZeros++;
+        density = m.values.length == 0 ? 0 : (double) nonZeros / m.values.length;
+        values = nonZeros;
+        commit();
+    }
+
+    /** Ends the phase and records it with the density and number of values of the sparse matrix. */
+    void finish(SparseMatrix m) {
+        finish(m.getDensity(), m.numberOfValues);
+    }
+}
@@ -0,0 +1,135 @@
+package matrices;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An array of ints stored in a memory-mapped region of a file, indexed with longs.
+ * A single mapping cannot be larger than 2 GB, so the region is mapped in chunks.
+ * The chunks hold a whole number of rows (of the given row length),
+ * so a row can always be read through a single {@link IntBuffer}.
+ * <p>
+ * The values are stored in little-endian order.
+ */
+final class MappedIntArray {
+
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /** The largest chunk that is mapped at once. */
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    private final MappedByteBuffer[] mappings;
+    private final IntBuffer[] chunks;
+    private final int chunkLength;
+    private final long length;
+
+    /**
+     * Maps a region of the file. If the mode is READ_WRITE, the file grows to hold the region.
+     *
+     * @param channel   the channel of the file
+     * @param mode      the mode of the mappings
+     * @param position  the offset (in bytes) of the first value in the file
+     * @param length    the number of values
+     * @param rowLength the number of values in a row, which no chunk boundary may split
+     */
+    MappedIntArray(FileChannel channel, FileChannel.MapMode mode, long position, long length, int rowLength)
+            throws IOException {
+        int rowsPerChunk = MAX_CHUNK_BYTES / Integer.BYTES / Math.max(1, rowLength);
+        if (rowsPerChunk == 0)
+            throw new IllegalArgumentException("Rows of " + rowLength + " values do not fit in a mapping");
+        this.chunkLength = rowsPerChunk * Math.max(1, rowLength);
+        this.length = length;
+
+        int count = (int) ((length + chunkLength - 1) / chunkLength);
+        this.mappings = new MappedByteBuffer[count];
+        this.chunks = new IntBuffer[count];
+        for (int c = 0; c < count; c++) {
+            long start = (long) c * chunkLength;
+            int size = (int) Math.min(chunkLength, length - start);
+            mappings[c] = channel.map(mode, position + start * Integer.BYTES, (long) size * Integer.BYTES);
+            mappings[c].order(ORDER);
+            chunks[c] = mappings[c].asIntBuffer();
+        }
+    }
+
+    /** Returns the number of values. */
+    long length() {
+        return length;
+    }
+
+    int get(long index) {
+        return chunks[(int) (index / chunkLength)].get((int) (index % chunkLength));
+    }
+
+    void set(long index, int value) {
+        chunks[(int) (index / chunkLength)].put((int) (index % chunkLength), value);
+    }
+
+    /** Returns a view of the values in [index, index + count), which must not cross a row boundary. */
+    IntBuffer slice(long index, int count) {
+        return chunks[(int) (index / chunkLength)].slice((int) (index % chunkLength), count);
+    }
+
+    /** Copies values, starting at the index, into the whole destination array. */
+    void get(long index, int[] destination) {
+        int copied = 0;
+        while (copied < destination.length) {
+            long at = index + copied;
+            IntBuffer chunk = chunks[(int) (at / chunkLength)];
+            int offset = (int) (at % chunkLength);
+            int count = Math.min(destination.length - copied, chunk.limit() - offset);
+            chunk.get(offset, destination, copied, count);
+            copied += count;
+        }
+    }
+
+    /** Copies the whole source array into the values, starting at the index. */
+    void put(long index, int[] source) {
+        int copied = 0;
+        while (copied < source.length) {
+            long at = index + copied;
+            IntBuffer chunk = chunks[(int) (at / chunkLength)];
+            int offset = (int) (at % chunkLength);
+            int count = Math.min(source.length - copied, chunk.limit() - offset);
+            chunk.put(offset, source, copied, count);
+            copied += count;
+        }
+    }
+
+    /** Writes any changes back to the file. */
+    void force() {
+        for (MappedByteBuffer mapping : mappings)
+            mapping.force();
+    }
+
+    /** Writes a header of int fields at the start of the file. */
+    static void writeHeader(FileChannel channel, int headerBytes, int... fields) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ORDER);
+        for (int field : fields) header.putInt(field);
+        header.rewind();
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+    }
+
+    /**
+     * Reads the int fields of the header at the start of the file.
+     *
+     * @throws IOException if the file is too short or does not start with the magic number
+     */
+    static int[] readHeader(FileChannel channel, int headerBytes, int magic) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ORDER);
+        while (header.hasRemaining())
+            if (channel.read(header, header.position()) < 0)
+                throw new IOException("The file ends inside its header");
+        header.flip();
+        int[] fields = new int[headerBytes / Integer.BYTES];
+        header.asIntBuffer().get(fields);
+        if (fields[0] != magic)
+            throw new IOException(String.format("Unexpected file type %08x, expected %08x", fields[0], magic));
+        return fields;
+    }
+}
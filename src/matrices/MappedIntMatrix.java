@@ -0,0 +1,199 @@
+package matrices;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A square matrix of Integers kept in a memory-mapped file instead of on the heap.
+ * Its size is limited by the disk rather than by the heap, and the operating system
+ * pages the values in and out of memory as they are used.
+ * <p>
+ * File format (little-endian): a 16 byte header holding {@link MappedIntMatrix#MAGIC} and the dimension,
+ * followed by the values in row-major order.
+ */
+public class MappedIntMatrix implements Closeable {
+
+    /** The first four bytes of the file, "IMAT". */
+    static final int MAGIC = 0x54414D49;
+    static final int HEADER_BYTES = 16;
+
+    private final FileChannel channel;
+    private final boolean writable;
+    private final int dim;
+    private final MappedIntArray values;
+    /** A view of each row, so that the kernels can read rows without working out their chunk. */
+    private final IntBuffer[] rows;
+
+    /**
+     * Creates a new file holding a matrix of zeros.
+     * An existing file is replaced.
+     */
+    public static MappedIntMatrix create(Path file, int dim) throws IOException {
+        FileChannel channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        MappedIntArray.writeHeader(channel, HEADER_BYTES, MAGIC, dim);
+        return new MappedIntMatrix(channel, FileChannel.MapMode.READ_WRITE, dim);
+    }
+
+    /** Opens a matrix that was written to a file before, for reading only. */
+    public static MappedIntMatrix open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, READ);
+        int[] header = MappedIntArray.readHeader(channel, HEADER_BYTES, MAGIC);
+        return new MappedIntMatrix(channel, FileChannel.MapMode.READ_ONLY, header[1]);
+    }
+
+    /**
+     * Opens a matrix that was written to a file before, for reading and writing.
+     * Several processes may open the same file and write to different cells of it.
+     */
+    static MappedIntMatrix openWritable(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, READ, WRITE);
+        int[] header = MappedIntArray.readHeader(channel, HEADER_BYTES, MAGIC);
+        return new MappedIntMatrix(channel, FileChannel.MapMode.READ_WRITE, header[1]);
+    }
+
+    /** Copies a matrix from the heap into a new file. */
+    public static MappedIntMatrix from(IntMatrix m, Path file) throws IOException {
+        MappedIntMatrix mapped = create(file, m.getDim());
+        mapped.values.put(0, m.values);
+        return mapped;
+    }
+
+    /** Copies the matrix onto the heap. This is a bulk copy of the values, with no parsing. */
+    public IntMatrix toIntMatrix() {
+        IntMatrix m = new IntMatrix(dim);
+        values.get(0, m.values);
+        return m;
+    }
+
+    /**
+     * Creates a square matrix in a new file and fills it with random numbers according to the given density.
+     * Only one row is on the heap at a time.
+     *
+     * @see IntMatrix#createRandom(int, double)
+     */
+    public static MappedIntMatrix createRandom(int dim, double density, Path file) throws IOException {
+        return createRandom(dim, density, new Random(), file);
+    }
+
+    /**
+     * Creates a square matrix in a new file, filled with random numbers according to the given density.
+     * The same seed gives the same matrix as {@link IntMatrix#createRandom(int, double, long)}, in every JVM.
+     *
+     * @param seed the seed of the random numbers
+     * @param file the file to hold the matrix
+     */
+    public static MappedIntMatrix createRandom(int dim, double density, long seed, Path file) throws IOException {
+        return createRandom(dim, density, new Random(seed), file);
+    }
+
+    private static MappedIntMatrix createRandom(int dim, double density, Random r, Path file) throws IOException {
+        MappedIntMatrix m = create(file, dim);
+        int[] row = new int[dim];
+        for (int i = 0; i < dim; i++) {
+            for (int j = 0; j < dim; j++)
+                row[j] = r.nextDouble() >= density ? 0 : r.nextInt();
+            m.setRow(i, row);
+        }
+        return m;
+    }
+
+    /**
+     * Multiplies two mapped matrices into a new file with the i-k-j loops, skipping zeros of a.
+     * Each row of the product is accumulated on the heap and then written out in one go.
+     *
+     * @param file the file to hold the product
+     */
+    public static MappedIntMatrix multiply(MappedIntMatrix a, MappedIntMatrix b, Path file) throws IOException {
+        int dim = a.dim;
+        MappedIntMatrix result = create(file, dim);
+        int[] row = new int[dim];
+        for (int i = 0; i < dim; i++) {
+            Arrays.fill(row, 0);
+            IntBuffer rowOfA = a.rows[i];
+            for (int k = 0; k < dim; k++) {
+                int aik = rowOfA.get(k);
+                // Skip zeros.
+                if (aik == 0) continue;
+
+                IntBuffer rowOfB = b.rows[k];
+                for (int j = 0; j < dim; j++)
+                    row[j] += aik * rowOfB.get(j);
+            }
+            result.setRow(i, row);
+        }
+        return result;
+    }
+
+    private MappedIntMatrix(FileChannel channel, FileChannel.MapMode mode, int dim) throws IOException {
+        this.channel = channel;
+        this.writable = mode == FileChannel.MapMode.READ_WRITE;
+        this.dim = dim;
+        this.values = new MappedIntArray(channel, mode, HEADER_BYTES, (long) dim * dim, dim);
+        this.rows = new IntBuffer[dim];
+        for (int i = 0; i < dim; i++)
+            rows[i] = values.slice((long) i * dim, dim);
+    }
+
+    /** Returns the dimension of the matrix. */
+    public int getDim() {
+        return dim;
+    }
+
+    /** Get the value stored at the specified location. */
+    public int get(int i, int j) {
+        return rows[i].get(j);
+    }
+
+    /** Update the value stored at the specified location. */
+    public void set(int i, int j, int val) {
+        rows[i].put(j, val);
+    }
+
+    /**
+     * Copies a square block onto the heap, padding with zeros the cells that are outside the matrix.
+     *
+     * @param firstRow  the row of the top left cell of the block
+     * @param firstCol  the column of the top left cell of the block
+     * @param blockSize the dimension of the block
+     */
+    IntMatrix getBlock(int firstRow, int firstCol, int blockSize) {
+        IntMatrix block = new IntMatrix(blockSize);
+        int cols = Math.max(0, Math.min(blockSize, dim - firstCol));
+        for (int r = 0; r < blockSize && firstRow + r < dim && cols > 0; r++)
+            rows[firstRow + r].get(firstCol, block.values, r * blockSize, cols);
+        return block;
+    }
+
+    /** Writes the cells of a square block that are inside the matrix, with the top left cell of the block at the given cell. */
+    void setBlock(IntMatrix block, int firstRow, int firstCol) {
+        int blockSize = block.getDim();
+        int cols = Math.max(0, Math.min(blockSize, dim - firstCol));
+        for (int r = 0; r < blockSize && firstRow + r < dim && cols > 0; r++)
+            rows[firstRow + r].put(firstCol, block.values, r * blockSize, cols);
+    }
+
+    /** Overwrites a whole row with the given values. */
+    void setRow(int i, int[] row) {
+        rows[i].put(0, row);
+    }
+
+    /**
+     * Writes any changes to the file and closes it.
+     * The mapping itself is released when it is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writable) values.force();
+        channel.close();
+    }
+}
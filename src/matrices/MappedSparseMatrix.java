@@ -0,0 +1,137 @@
+package matrices;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A Compressed Row Storage (CRS) sparse matrix kept in a memory-mapped file instead of on the heap.
+ * It has the same layout as {@link SparseMatrix}.
+ * <p>
+ * File format (little-endian): a 16 byte header holding {@link MappedSparseMatrix#MAGIC}, the dimension
+ * and the number of values, followed by the rowStarts (dimension ints), colIds and values (one int per value).
+ */
+public class MappedSparseMatrix implements Closeable {
+
+    /** The first four bytes of the file, "CSRM". */
+    static final int MAGIC = 0x4D525343;
+    static final int HEADER_BYTES = 16;
+
+    private final FileChannel channel;
+    private final boolean writable;
+    private final int dimension;
+    private final int numberOfValues;
+    final MappedIntArray rowStarts;
+    final MappedIntArray colIds;
+    final MappedIntArray values;
+
+    /**
+     * Creates a new file with room for a matrix with the given number of values.
+     * An existing file is replaced.
+     */
+    static MappedSparseMatrix create(Path file, int dimension, int numberOfValues) throws IOException {
+        FileChannel channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        MappedIntArray.writeHeader(channel, HEADER_BYTES, MAGIC, dimension, numberOfValues);
+        return new MappedSparseMatrix(channel, FileChannel.MapMode.READ_WRITE, dimension, numberOfValues);
+    }
+
+    /** Opens a matrix that was written to a file before, for reading only. */
+    public static MappedSparseMatrix open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, READ);
+        int[] header = MappedIntArray.readHeader(channel, HEADER_BYTES, MAGIC);
+        return new MappedSparseMatrix(channel, FileChannel.MapMode.READ_ONLY, header[1], header[2]);
+    }
+
+    /** Copies a matrix from the heap into a new file. */
+    public static MappedSparseMatrix from(SparseMatrix m, Path file) throws IOException {
+        MappedSparseMatrix mapped = create(file, m.dimension, m.numberOfValues);
+        mapped.rowStarts.put(0, m.rowStarts);
+        mapped.colIds.put(0, m.colIds);
+        mapped.values.put(0, m.values);
+        return mapped;
+    }
+
+    /** Copies the matrix onto the heap. This is a bulk copy of the three arrays, with no parsing. */
+    public SparseMatrix toSparseMatrix() {
+        int[] heapRowStarts = new int[dimension];
+        int[] heapColIds = new int[numberOfValues];
+        int[] heapValues = new int[numberOfValues];
+        rowStarts.get(0, heapRowStarts);
+        colIds.get(0, heapColIds);
+        values.get(0, heapValues);
+        return new SparseMatrix(dimension, heapRowStarts, heapColIds, heapValues);
+    }
+
+    /**
+     * Multiplies two mapped sparse matrices into a new dense mapped matrix.
+     * This is {@link SparseMatrix#multiply(SparseMatrix, SparseMatrix)} reading the arrays from the mappings.
+     * Each row of the product is accumulated on the heap and then written out in one go.
+     *
+     * @param file the file to hold the product
+     */
+    public static MappedIntMatrix multiply(MappedSparseMatrix a, MappedSparseMatrix b, Path file) throws IOException {
+        int n = a.dimension;
+        MappedIntMatrix product = MappedIntMatrix.create(file, n);
+        int[] row = new int[n];
+        for (int rowIndInA = 0; rowIndInA < n; rowIndInA++) {
+            Arrays.fill(row, 0);
+            for (int valIndInA = a.rowStarts.get(rowIndInA); valIndInA < a.rowEnd(rowIndInA); valIndInA++) {
+                int rowIndInB = a.colIds.get(valIndInA);
+                int valueInA = a.values.get(valIndInA);
+                int limit = b.rowEnd(rowIndInB);
+                for (int valIndInB = b.rowStarts.get(rowIndInB); valIndInB < limit; valIndInB++)
+                    row[b.colIds.get(valIndInB)] += valueInA * b.values.get(valIndInB);
+            }
+            product.setRow(rowIndInA, row);
+        }
+        return product;
+    }
+
+    private MappedSparseMatrix(FileChannel channel, FileChannel.MapMode mode, int dimension, int numberOfValues)
+            throws IOException {
+        this.channel = channel;
+        this.writable = mode == FileChannel.MapMode.READ_WRITE;
+        this.dimension = dimension;
+        this.numberOfValues = numberOfValues;
+        long position = HEADER_BYTES;
+        this.rowStarts = new MappedIntArray(channel, mode, position, dimension, 1);
+        position += (long) dimension * Integer.BYTES;
+        this.colIds = new MappedIntArray(channel, mode, position, numberOfValues, 1);
+        position += (long) numberOfValues * Integer.BYTES;
+        this.values = new MappedIntArray(channel, mode, position, numberOfValues, 1);
+    }
+
+    /** Returns the index just after the last value of the given row. */
+    int rowEnd(int row) {
+        return row + 1 < dimension ? rowStarts.get(row + 1) : numberOfValues;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getNumberOfValues() {
+        return numberOfValues;
+    }
+
+    /**
+     * Writes any changes to the file and closes it.
+     * The mappings themselves are released when they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writable) {
+            rowStarts.force();
+            colIds.force();
+            values.force();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,300 @@
+package matrices;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Multiplies a chain of matrices, A0 * A1 * ... * Ak, in the order and with the kernels that are expected
+ * to be fastest. The operands may be dense or sparse; the product is dense, like the products of the other kernels.
+ * <p>
+ * The planner estimates the density of every partial product, assuming the values are spread at random:
+ * a cell of X * Y is a sum of n products, each of which is non-zero with probability dX * dY,
+ * so it is non-zero with probability about 1 - exp(-n * dX * dY). The estimate is composed pair by pair,
+ * from the estimates of the two halves of every split, so that a partial product that is already
+ * (nearly) dense does not count as denser still; composing 1 - exp(-n^j * d0 * ... * dj) over all paths
+ * at once would take every path as independent and overestimate saturated products.
+ * A range takes the estimate of the split of its cheapest plan.
+ * <p>
+ * The cost of a kernel is estimated in dense multiply-adds from the dimension and the densities of its operands.
+ * A sparse multiply-add costs 1 / c^2 dense ones, where c is the density below which the sparse multiplication
+ * is faster (taken from an {@link AutoMultiplication} profile, or {@link MatrixChain#DEFAULT_CROSSOVER}),
+ * as the two kernels then take the same time. Converting a matrix between the formats costs n^2.
+ * Dynamic programming over the ranges of the chain then chooses, for each range and each format of its product,
+ * the split, the formats of the two halves and the kernel of the cheapest plan.
+ * <p>
+ * All the matrices of this library are square, so all the operands must have the same dimension;
+ * the order matters through the densities of the partial products rather than through their shapes.
+ * <p>
+ * Usage:
+ * <pre>
+ * IntMatrix product = new MatrixChain().times(a).times(b).times(c).multiply();
+ * </pre>
+ */
+public class MatrixChain {
+
+    /** The crossover density used without a profile. */
+    public static final double DEFAULT_CROSSOVER = 0.1;
+
+    private static final int DENSE = 0, SPARSE = 1;
+
+    /** The kernels that multiply two partial products, with the formats of their operands and product. */
+    private enum Kernel {
+        /** {@link IntMatrix#parallelMultiplication(IntMatrix, IntMatrix, int)}. */
+        DENSE_DENSE(DENSE, DENSE, DENSE, "dense"),
+        /** {@link SparseMatrix#parallelMultiply(SparseMatrix, SparseMatrix, int)}. */
+        SPARSE_SPARSE(SPARSE, SPARSE, DENSE, "sparse"),
+        /** {@link SparseMatrix#sparseMultiply(SparseMatrix, SparseMatrix)}. */
+        SPARSE_OUTPUT(SPARSE, SPARSE, SPARSE, "sparse-output"),
+        /** {@link SparseMatrix#multiply(SparseMatrix, IntMatrix)}. */
+        SPARSE_DENSE(SPARSE, DENSE, DENSE, "sparse-dense"),
+        /** {@link SparseMatrix#multiply(IntMatrix, SparseMatrix)}. */
+        DENSE_SPARSE(DENSE, SPARSE, DENSE, "dense-sparse");
+
+        final int left, right, product;
+        final String name;
+
+        Kernel(int left, int right, int product, String name) {
+            this.left = left;
+            this.right = right;
+            this.product = product;
+            this.name = name;
+        }
+    }
+
+    /** An operand of the chain, or a partial product, in either format. */
+    private static final class Operand {
+
+        /** The format the operand was given in; the other one may be added by a conversion. */
+        final int format;
+        IntMatrix dense;
+        SparseMatrix sparse;
+
+        Operand(int format) {
+            this.format = format;
+        }
+
+        IntMatrix dense() {
+            if (dense == null) dense = SparseMatrix.toDense(sparse);
+            return dense;
+        }
+
+        SparseMatrix sparse() {
+            if (sparse == null) sparse = SparseMatrix.fromDense(dense);
+            return sparse;
+        }
+    }
+
+    /** How the product of a range of the chain is made in one format. */
+    private static final class Step {
+
+        final double cost;
+        /** The last operand of the left half, or -1 for a conversion from the other format (or a single operand). */
+        final int split;
+        final Kernel kernel;
+
+        Step(double cost, int split, Kernel kernel) {
+            this.cost = cost;
+            this.split = split;
+            this.kernel = kernel;
+        }
+    }
+
+    private final AutoMultiplication profile;
+    private final int parallelism;
+    private final List<Operand> operands = new ArrayList<>();
+    private final List<Double> densities = new ArrayList<>();
+    private int dimension = -1;
+    /** steps[i][j][format] is the cheapest way to make the product of operands i to j in that format. */
+    private Step[][][] steps = null;
+
+    /** Creates a chain planned with the default crossover density and as many threads as there are processors. */
+    public MatrixChain() {
+        this(null, Workers.defaultParallelism());
+    }
+
+    /**
+     * Creates a chain.
+     *
+     * @param profile     the crossover densities of this machine, or null for the default crossover
+     * @param parallelism the number of threads given to the parallel kernels
+     */
+    public MatrixChain(AutoMultiplication profile, int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.profile = profile;
+        this.parallelism = parallelism;
+    }
+
+    /** Appends a dense matrix to the chain. */
+    public MatrixChain times(IntMatrix m) {
+        Operand operand = new Operand(DENSE);
+        operand.dense = m;
+        return append(operand, m.getDim(), m.getDensity());
+    }
+
+    /** Appends a sparse matrix to the chain. */
+    public MatrixChain times(SparseMatrix m) {
+        Operand operand = new Operand(SPARSE);
+        operand.sparse = m;
+        return append(operand, m.dimension, m.getDensity());
+    }
+
+    private MatrixChain append(Operand operand, int dim, double density) {
+        if (dimension >= 0 && dim != dimension)
+            throw new IllegalArgumentException("Cannot multiply matrices of dimensions " + dimension + " and " + dim);
+        dimension = dim;
+        operands.add(operand);
+        densities.add(density);
+        steps = null;
+        return this;
+    }
+
+    /**
+     * Multiplies the chain following the cheapest plan.
+     *
+     * @throws IllegalStateException if the chain is empty
+     */
+    public IntMatrix multiply() {
+        plan();
+        return evaluate(0, operands.size() - 1, DENSE).dense();
+    }
+
+    /**
+     * Returns the cheapest plan, with the operands numbered from 0, for example
+     * {@code dense-sparse(A0, sparse-output(A1, A2))}. A conversion is shown as {@code to-dense(...)} or {@code to-sparse(...)}.
+     *
+     * @throws IllegalStateException if the chain is empty
+     */
+    public String explain() {
+        plan();
+        StringBuilder plan = new StringBuilder();
+        explain(0, operands.size() - 1, DENSE, plan);
+        return plan.toString();
+    }
+
+    /**
+     * Returns the estimated cost of the cheapest plan, in dense multiply-adds.
+     *
+     * @throws IllegalStateException if the chain is empty
+     */
+    public double estimatedCost() {
+        plan();
+        return steps[0][operands.size() - 1][DENSE].cost;
+    }
+
+    private void plan() {
+        if (operands.isEmpty()) throw new IllegalStateException("The chain has no matrices");
+        if (steps != null) return;
+        int k = operands.size();
+        double n = dimension;
+        double conversion = n * n;
+        double crossover = profile == null ? DEFAULT_CROSSOVER : profile.crossover(dimension);
+        double sparseFactor = 1 / (crossover * crossover);
+        double[][] density = new double[k][k];
+        for (int i = 0; i < k; i++)
+            density[i][i] = densities.get(i);
+
+        steps = new Step[k][k][];
+        for (int i = 0; i < k; i++) {
+            int format = operands.get(i).format;
+            steps[i][i] = new Step[2];
+            steps[i][i][format] = new Step(0, -1, null);
+            steps[i][i][1 - format] = new Step(conversion, -1, null);
+        }
+        for (int length = 2; length <= k; length++)
+            for (int i = 0; i + length - 1 < k; i++) {
+                int j = i + length - 1;
+                Step[] best = new Step[2];
+                double[] splitDensity = new double[length - 1];
+                for (int split = i; split < j; split++) {
+                    double left = density[i][split], right = density[split + 1][j];
+                    double product = -Math.expm1(-n * left * right);
+                    splitDensity[split - i] = product;
+                    for (Kernel kernel : Kernel.values()) {
+                        double cost = steps[i][split][kernel.left].cost + steps[split + 1][j][kernel.right].cost
+                                + kernelCost(kernel, n, left, right, product, sparseFactor);
+                        if (best[kernel.product] == null || cost < best[kernel.product].cost)
+                            best[kernel.product] = new Step(cost, split, kernel);
+                    }
+                }
+                // Making the product in one format and converting it may beat every kernel of the other format.
+                for (int format = DENSE; format <= SPARSE; format++)
+                    if (best[format] == null || best[1 - format].cost + conversion < best[format].cost)
+                        best[format] = new Step(best[1 - format].cost + conversion, -1, null);
+                steps[i][j] = best;
+                Step cheapest = best[DENSE].cost <= best[SPARSE].cost ? best[DENSE] : best[SPARSE];
+                // A conversion makes the same product as the multiplication it converts.
+                int split = cheapest.split >= 0 ? cheapest.split : Math.max(best[DENSE].split, best[SPARSE].split);
+                density[i][j] = splitDensity[split - i];
+            }
+    }
+
+    /**
+     * Returns the estimated cost of a kernel in dense multiply-adds.
+     * The sparse multiplications make about n^3 * left * right multiply-adds; the sparse times dense one
+     * streams a dense row for every value of the left operand, at about the speed of the dense kernel,
+     * and the dense times sparse one tests every cell of the left operand and scatters a sparse row for every non-zero.
+     */
+    private double kernelCost(Kernel kernel, double n, double left, double right, double product, double sparseFactor) {
+        double cube = n * n * n;
+        switch (kernel) {
+            case DENSE_DENSE:
+                return cube / parallelism;
+            case SPARSE_SPARSE:
+                return (cube * left * right * sparseFactor + n * n) / parallelism;
+            case SPARSE_OUTPUT:
+                return cube * left * right * sparseFactor + n * n * product;
+            case SPARSE_DENSE:
+                return cube * left;
+            case DENSE_SPARSE:
+                return n * n + cube * left * right * Math.sqrt(sparseFactor);
+            default:
+                throw new IllegalArgumentException("Unknown kernel: " + kernel);
+        }
+    }
+
+    /** Makes the product of operands i to j in the given format, following the plan. */
+    private Operand evaluate(int i, int j, int format) {
+        Step step = steps[i][j][format];
+        if (i == j) return operands.get(i);
+        if (step.kernel == null) return evaluate(i, j, 1 - format);
+
+        Operand left = evaluate(i, step.split, step.kernel.left);
+        Operand right = evaluate(step.split + 1, j, step.kernel.right);
+        Operand product = new Operand(step.kernel.product);
+        switch (step.kernel) {
+            case DENSE_DENSE:
+                product.dense = IntMatrix.parallelMultiplication(left.dense(), right.dense(), parallelism);
+                break;
+            case SPARSE_SPARSE:
+                product.dense = SparseMatrix.parallelMultiply(left.sparse(), right.sparse(), parallelism);
+                break;
+            case SPARSE_OUTPUT:
+                product.sparse = SparseMatrix.sparseMultiply(left.sparse(), right.sparse());
+                break;
+            case SPARSE_DENSE:
+                product.dense = SparseMatrix.multiply(left.sparse(), right.dense());
+                break;
+            case DENSE_SPARSE:
+                product.dense = SparseMatrix.multiply(left.dense(), right.sparse());
+                break;
+        }
+        return product;
+    }
+
+    private void explain(int i, int j, int format, StringBuilder plan) {
+        Step step = steps[i][j][format];
+        if (step.kernel == null) {
+            boolean converted = i != j || step.cost > 0;
+            if (converted) plan.append(format == DENSE ? "to-dense(" : "to-sparse(");
+            if (i == j) plan.append('A').append(i);
+            else explain(i, j, 1 - format, plan);
+            if (converted) plan.append(')');
+            return;
+        }
+        plan.append(step.kernel.name).append('(');
+        explain(i, step.split, step.kernel.left, plan);
+        plan.append(", ");
+        explain(step.split + 1, j, step.kernel.right, plan);
+        plan.append(')');
+    }
+}
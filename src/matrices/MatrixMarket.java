@@ -0,0 +1,269 @@
+package matrices;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Converts Matrix Market coordinate files (.mtx) into the binary format of {@link MappedSparseMatrix}.
+ * http://math.nist.gov/MatrixMarket/formats.html
+ * <p>
+ * The text is parsed once per conversion and never kept in memory. The entries are streamed twice:
+ * the first pass counts the entries in each row and the second one puts them in a temporary
+ * memory-mapped file at their row's position. Each row is then sorted by column, duplicates are
+ * added together and the rows are copied into the final file.
+ * Only arrays of the dimension and one row at a time are on the heap.
+ * <p>
+ * Supported fields are integer, real (rounded to the nearest integer) and pattern (every value is 1).
+ * Symmetric and skew-symmetric matrices are expanded to both triangles.
+ * Matrices that are not square are padded with empty rows or columns to a square.
+ */
+public class MatrixMarket {
+
+    private static final String BANNER = "%%MatrixMarket";
+    private static final int READ_BUFFER = 1 << 20;
+
+    /** The properties read from the banner and size lines. */
+    private static class Header {
+        boolean pattern;
+        boolean real;
+        /** 0 for general, 1 for symmetric and -1 for skew-symmetric matrices. */
+        int mirror;
+        int dimension;
+        long entries;
+    }
+
+    /** Receives the entries of the file, with 0-based indexes. */
+    private interface EntryConsumer {
+        void accept(int row, int col, int value) throws IOException;
+    }
+
+    /**
+     * Converts a Matrix Market file from the command line.
+     * Usage: java matrices.MatrixMarket &lt;input .mtx&gt; &lt;output file&gt;
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java matrices.MatrixMarket <input .mtx> <output file>");
+            return;
+        }
+        convert(Paths.get(args[0]), Paths.get(args[1]));
+    }
+
+    /**
+     * Converts a Matrix Market coordinate file into the binary format, replacing the output file.
+     *
+     * @param mtx    the Matrix Market file
+     * @param output the file to write
+     * @throws IOException if either file cannot be used or the input is not a supported Matrix Market file
+     */
+    public static void convert(Path mtx, Path output) throws IOException {
+        Header header = readHeader(mtx);
+        int n = header.dimension;
+
+        // First pass: count the entries of each row.
+        int[] rowCounts = new int[n];
+        forEachEntry(mtx, header, (row, col, value) -> rowCounts[row]++);
+
+        long total = 0;
+        for (int count : rowCounts) total += count;
+        Path scratch = Files.createTempFile(output.toAbsolutePath().getParent(), "mtx", ".tmp");
+        try (MappedSparseMatrix unsorted = MappedSparseMatrix.create(scratch, n, Math.toIntExact(total))) {
+            // Second pass: put every entry after the ones already seen in its row.
+            int[] cursors = new int[n];
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                unsorted.rowStarts.set(i, start);
+                cursors[i] = start;
+                start += rowCounts[i];
+            }
+            forEachEntry(mtx, header, (row, col, value) -> {
+                int at = cursors[row]++;
+                unsorted.colIds.set(at, col);
+                unsorted.values.set(at, value);
+            });
+
+            // Sort and merge each row in place, remembering how many values it has left.
+            long numberOfValues = 0;
+            for (int i = 0; i < n; i++) {
+                rowCounts[i] = sortRow(unsorted, unsorted.rowStarts.get(i), rowCounts[i]);
+                numberOfValues += rowCounts[i];
+            }
+
+            try (MappedSparseMatrix result = MappedSparseMatrix.create(output, n, Math.toIntExact(numberOfValues))) {
+                int written = 0;
+                for (int i = 0; i < n; i++) {
+                    result.rowStarts.set(i, written);
+                    int from = unsorted.rowStarts.get(i);
+                    for (int v = 0; v < rowCounts[i]; v++, written++) {
+                        result.colIds.set(written, unsorted.colIds.get(from + v));
+                        result.values.set(written, unsorted.values.get(from + v));
+                    }
+                }
+            }
+        }
+        finally {
+            Files.deleteIfExists(scratch);
+        }
+    }
+
+    /**
+     * Sorts the entries of a row by column and adds up entries with the same column.
+     * The merged entries are written back from the start of the row.
+     *
+     * @return the number of entries left in the row
+     */
+    private static int sortRow(MappedSparseMatrix m, int start, int count) {
+        if (count == 0) return 0;
+        // Pack each entry as (column, value) so that sorting the longs sorts by column.
+        long[] entries = new long[count];
+        for (int v = 0; v < count; v++)
+            entries[v] = ((long) m.colIds.get(start + v) << 32) | (m.values.get(start + v) & 0xFFFFFFFFL);
+        Arrays.sort(entries);
+
+        int kept = 0;
+        int col = (int) (entries[0] >>> 32);
+        int sum = (int) entries[0];
+        for (int v = 1; v < count; v++) {
+            int nextCol = (int) (entries[v] >>> 32);
+            if (nextCol == col) {
+                sum += (int) entries[v];
+                continue;
+            }
+            m.colIds.set(start + kept, col);
+            m.values.set(start + kept, sum);
+            kept++;
+            col = nextCol;
+            sum = (int) entries[v];
+        }
+        m.colIds.set(start + kept, col);
+        m.values.set(start + kept, sum);
+        return kept + 1;
+    }
+
+    /** Reads the banner and the size line. */
+    private static Header readHeader(Path mtx) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(mtx, StandardCharsets.US_ASCII)) {
+            String banner = reader.readLine();
+            if (banner == null || !banner.startsWith(BANNER))
+                throw new IOException("Not a Matrix Market file: " + mtx);
+            String[] words = banner.trim().toLowerCase().split("\\s+");
+            if (words.length < 5 || !words[1].equals("matrix") || !words[2].equals("coordinate"))
+                throw new IOException("Only coordinate matrices are supported: " + banner);
+
+            Header header = new Header();
+            switch (words[3]) {
+                case "integer":
+                    break;
+                case "real":
+                    header.real = true;
+                    break;
+                case "pattern":
+                    header.pattern = true;
+                    break;
+                default:
+                    throw new IOException("Unsupported field: " + words[3]);
+            }
+            switch (words[4]) {
+                case "general":
+                    header.mirror = 0;
+                    break;
+                case "symmetric":
+                    header.mirror = 1;
+                    break;
+                case "skew-symmetric":
+                    header.mirror = -1;
+                    break;
+                default:
+                    throw new IOException("Unsupported symmetry: " + words[4]);
+            }
+
+            String line = nextDataLine(reader);
+            if (line == null) throw new IOException("Missing size line: " + mtx);
+            String[] size = line.trim().split("\\s+");
+            try {
+                header.dimension = Math.max(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+                header.entries = Long.parseLong(size[2]);
+            }
+            catch (NumberFormatException | IndexOutOfBoundsException malformed) {
+                throw new IOException("Malformed size line: " + line, malformed);
+            }
+            return header;
+        }
+    }
+
+    /** Streams the entries of the file, including the mirrored ones of symmetric matrices. */
+    private static void forEachEntry(Path mtx, Header header, EntryConsumer consumer) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                Files.newBufferedReader(mtx, StandardCharsets.US_ASCII), READ_BUFFER)) {
+            // Skip the banner, the comments and the size line.
+            reader.readLine();
+            nextDataLine(reader);
+
+            for (long e = 0; e < header.entries; e++) {
+                String line = nextDataLine(reader);
+                if (line == null) throw new IOException("Expected " + header.entries + " entries, found " + e);
+
+                int row, col, value = 1;
+                try {
+                    int end = nextSpace(line, 0);
+                    row = Integer.parseInt(line, 0, end, 10) - 1;
+                    int start = nextWord(line, end);
+                    end = nextSpace(line, start);
+                    col = Integer.parseInt(line, start, end, 10) - 1;
+                    if (!header.pattern) {
+                        start = nextWord(line, end);
+                        end = nextSpace(line, start);
+                        if (header.real) {
+                            double real = Double.parseDouble(line.substring(start, end));
+                            long rounded = Math.round(real);
+                            // Rounding a value outside the range of an int would silently saturate it.
+                            if (Double.isNaN(real) || rounded < Integer.MIN_VALUE || rounded > Integer.MAX_VALUE)
+                                throw new IOException("Entry " + e + " out of range: " + line);
+                            value = (int) rounded;
+                        }
+                        else value = Integer.parseInt(line, start, end, 10);
+                    }
+                }
+                catch (NumberFormatException | IndexOutOfBoundsException malformed) {
+                    throw new IOException("Entry " + e + " is malformed: " + line, malformed);
+                }
+                if (row < 0 || row >= header.dimension || col < 0 || col >= header.dimension
+                        || header.mirror < 0 && value == Integer.MIN_VALUE)
+                    throw new IOException("Entry " + e + " out of range: " + line);
+
+                consumer.accept(row, col, value);
+                if (header.mirror != 0 && row != col)
+                    consumer.accept(col, row, header.mirror * value);
+            }
+        }
+    }
+
+    /** Returns the next line that is neither empty nor a comment, or null at the end of the file. */
+    private static String nextDataLine(BufferedReader reader) throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) return null;
+            line = line.trim();
+        }
+        while (line.isEmpty() || line.charAt(0) == '%');
+        return line;
+    }
+
+    private static int nextSpace(String line, int from) {
+        int i = from;
+        while (i < line.length() && !Character.isWhitespace(line.charAt(i))) i++;
+        return i;
+    }
+
+    private static int nextWord(String line, int from) {
+        int i = from;
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) i++;
+        return i;
+    }
+}
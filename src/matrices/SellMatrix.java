@@ -0,0 +1,134 @@
+package matrices;
+
+import java.util.Arrays;
+
+/**
+ * A sliced ELLPACK implementation of a sparse square matrix (SELL-C-&sigma;).
+ * The rows are cut into slices of C consecutive rows, and every slice is stored as a small ELLPACK matrix,
+ * padded only to the length of its own longest row. Before slicing, the rows inside each window of
+ * &sigma; rows are sorted by length, so that rows of about the same length share a slice and little padding is needed.
+ * <p>
+ * Within a slice the values are stored column by column, so the multiplication works on C rows at once
+ * with unit stride. C is usually the number of ints in a vector register.
+ * With C = 1 this is the compressed row format; with C = &sigma; = n it is ELLPACK with sorted rows.
+ *
+ * @see EllMatrix
+ */
+public class SellMatrix {
+
+    /** Eight ints fill a 256-bit vector register. */
+    public static final int DEFAULT_SLICE_HEIGHT = 8;
+    public static final int DEFAULT_SORTING_SCOPE = 256;
+
+    private final int dimension;
+    private final int sliceHeight;
+    /** The original row of each position after sorting. */
+    private final int[] rows;
+    /** The index of the first stored cell of each slice, with the total number of cells last. */
+    private final int[] sliceStarts;
+    /** The k-th value of position r of slice s is at sliceStarts[s] + k * sliceHeight + r. */
+    private final int[] colIds;
+    private final int[] values;
+    private final int numberOfValues;
+
+    private SellMatrix(int dimension, int sliceHeight, int[] rows, int[] sliceStarts,
+                       int[] colIds, int[] values, int numberOfValues) {
+        this.dimension = dimension;
+        this.sliceHeight = sliceHeight;
+        this.rows = rows;
+        this.sliceStarts = sliceStarts;
+        this.colIds = colIds;
+        this.values = values;
+        this.numberOfValues = numberOfValues;
+    }
+
+    /**
+     * Converts a matrix from the compressed row format with the default slice height and sorting scope.
+     *
+     * @see SellMatrix#fromSparse(SparseMatrix, int, int)
+     */
+    public static SellMatrix fromSparse(SparseMatrix m) {
+        return fromSparse(m, DEFAULT_SLICE_HEIGHT, DEFAULT_SORTING_SCOPE);
+    }
+
+    /**
+     * Converts a matrix from the compressed row format.
+     * The last slice is padded with empty rows if the dimension is not a multiple of the slice height.
+     *
+     * @param sliceHeight  the number of rows in a slice (C)
+     * @param sortingScope the number of rows in a window that is sorted by row length (&sigma;), a multiple of C
+     * @throws ArithmeticException if the padded arrays do not fit in an array
+     */
+    public static SellMatrix fromSparse(SparseMatrix m, int sliceHeight, int sortingScope) {
+        if (sliceHeight <= 0 || sortingScope <= 0 || sortingScope % sliceHeight != 0)
+            throw new IllegalArgumentException("Invalid slice height and sorting scope: " + sliceHeight + ", " + sortingScope);
+        int n = m.dimension;
+        int numberOfSlices = (n + sliceHeight - 1) / sliceHeight;
+
+        // Sort the rows in each window by decreasing length, packed as (length, row) so that ties keep their order.
+        int[] rows = new int[numberOfSlices * sliceHeight];
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = (long) -(m.rowEnd(i) - m.rowStarts[i]) << 32 | i;
+        for (int window = 0; window < n; window += sortingScope)
+            Arrays.sort(keys, window, Math.min(n, window + sortingScope));
+        for (int position = 0; position < rows.length; position++)
+            rows[position] = position < n ? (int) keys[position] : -1;
+
+        int[] sliceStarts = new int[numberOfSlices + 1];
+        long total = 0;
+        for (int slice = 0; slice < numberOfSlices; slice++) {
+            sliceStarts[slice] = Math.toIntExact(total);
+            // The first row of a slice is its longest one.
+            int first = rows[slice * sliceHeight];
+            total += (long) (m.rowEnd(first) - m.rowStarts[first]) * sliceHeight;
+        }
+        sliceStarts[numberOfSlices] = Math.toIntExact(total);
+
+        int[] colIds = new int[(int) total];
+        int[] values = new int[colIds.length];
+        for (int position = 0; position < n; position++) {
+            int row = rows[position];
+            int base = sliceStarts[position / sliceHeight] + position % sliceHeight;
+            int k = 0;
+            for (int valIndex = m.rowStarts[row]; valIndex < m.rowEnd(row); valIndex++, k++) {
+                colIds[base + k * sliceHeight] = m.colIds[valIndex];
+                values[base + k * sliceHeight] = m.values[valIndex];
+            }
+        }
+        return new SellMatrix(n, sliceHeight, rows, sliceStarts, colIds, values, m.numberOfValues);
+    }
+
+    /**
+     * Multiplies the matrix by a vector, y = a * x.
+     * The sums of a slice are added up in y itself, at the original row of each position, so nothing is allocated.
+     * Only the last slice has padded positions, and they come after all of its rows.
+     *
+     * @param x the vector to multiply, as long as the dimension of a
+     * @param y the vector to write the product to, as long as the dimension of a
+     */
+    public static void multiply(SellMatrix a, int[] x, int[] y) {
+        if (x.length != a.dimension || y.length != a.dimension)
+            throw new IllegalArgumentException("Vectors of length " + x.length + " and " + y.length
+                    + " do not fit a matrix of dimension " + a.dimension);
+        int c = a.sliceHeight;
+        for (int slice = 0; slice + 1 < a.sliceStarts.length; slice++) {
+            int first = slice * c;
+            int rowsInSlice = Math.min(c, a.dimension - first);
+            for (int r = 0; r < rowsInSlice; r++)
+                y[a.rows[first + r]] = 0;
+            for (int offset = a.sliceStarts[slice]; offset < a.sliceStarts[slice + 1]; offset += c)
+                for (int r = 0; r < rowsInSlice; r++)
+                    y[a.rows[first + r]] += a.values[offset + r] * x[a.colIds[offset + r]];
+        }
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /** Returns the number of stored cells, padding included, for each value of the matrix. */
+    public double getPaddingRatio() {
+        return numberOfValues == 0 ? 1 : (double) sliceStarts[sliceStarts.length - 1] / numberOfValues;
+    }
+}
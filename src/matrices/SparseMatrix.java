@@ -1,9 +1,10 @@
 package matrices;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Random;
-import java.util.Set;
+import java.util.SplittableRandom;
 
 /**
  * A Compressed Row Storage (CRS) implementation of a sparse square matrix.
@@ -15,63 +16,176 @@ public class SparseMatrix {
 
     private static final Random r = new Random();
 
+    /**
+     * The parallel multiplication splits the rows into this many chunks per thread.
+     * Having more chunks than threads lets idle threads steal the remaining work.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** The random generator splits its rows into tasks of this many rows. */
+    private static final int GENERATOR_ROWS_PER_TASK = 64;
+
+
+    /**
+     * Creates a random sparse matrix from a random seed.
+     *
+     * @see SparseMatrix#createRandomSparse(int, double, long, int)
+     */
     public static SparseMatrix createRandomSparse(int n, double density) {
-        SparseMatrix m = new SparseMatrix(n, density);
-        int valuesInserted = 0;
-        int valuesRemaining;
-        int spaceRemaining;
-        int value;
-        Set<Integer> colIDsInCurrentRow;
-        for_each_row:
+        return createRandomSparse(n, density, r.nextLong());
+    }
+
+    /**
+     * Creates a random sparse matrix using as many threads as there are available processors.
+     *
+     * @see SparseMatrix#createRandomSparse(int, double, long, int)
+     */
+    public static SparseMatrix createRandomSparse(int n, double density, long seed) {
+        return createRandomSparse(n, density, seed, Workers.defaultParallelism());
+    }
+
+    /**
+     * Creates a square sparse matrix where each cell holds a value with the given probability.
+     * The values are between 1 and 4.
+     * Instead of drawing a number for every cell, the distance to the next value in a row is drawn
+     * from the geometric distribution, so the cost grows with the number of values and not with n * n.
+     * The columns come out in increasing order, so no set of used columns is needed.
+     * <p>
+     * Each row draws from its own generators, seeded from the seed and the row index.
+     * The rows are first sampled to count their values and then sampled again to fill them in,
+     * which gives the same matrix for a given seed no matter how many threads are used.
+     *
+     * @param n           the dimension of the matrix
+     * @param density     the probability that a cell holds a value
+     * @param seed        the seed of the random numbers
+     * @param parallelism the number of threads to use
+     * @return the generated matrix
+     * @throws ArithmeticException if the matrix has more values than fit in an array
+     */
+    public static SparseMatrix createRandomSparse(int n, double density, long seed, int parallelism) {
+        KernelEvent event = KernelEvent.start("sparse", KernelEvent.GENERATE, n, parallelism);
+        int[] rowStarts = new int[n];
+        Workers.parallelFor(parallelism, 0, n, GENERATOR_ROWS_PER_TASK, (from, to) -> {
+            for (int i = from; i < to; i++)
+                rowStarts[i] = sampleRow(i, n, density, seed, null, null, 0);
+        });
+
+        // Turn the counts into the start index of each row.
+        long total = 0;
         for (int i = 0; i < n; i++) {
-            // Set this row's start index.
-            m.rowStarts[i] = valuesInserted;
-            colIDsInCurrentRow = new HashSet<>();
-            do {
-                // For each element in the row:
-                for (int j = 0; j < n; j++) {
-
-                    // Skip indexes that already contain values.
-                    if (colIDsInCurrentRow.contains(j)) continue;
-
-                    // Random chance that there is a value here.
-                    double prob = r.nextDouble();
-                    if (prob > m.density) continue;
-
-                    // Random non-zero value.
-                    do value = r.nextInt(5);
-                    while (value == 0);
-
-                    // Add the value and mark the index.
-                    m.colIds[valuesInserted] = j;
-                    colIDsInCurrentRow.add(j);
-                    m.values[valuesInserted] = value;
-                    valuesInserted++;
-
-                    // Are we done?
-                    if (valuesInserted == m.numberOfValues) break for_each_row;
-                }
+            int count = rowStarts[i];
+            rowStarts[i] = Math.toIntExact(total);
+            total += count;
+        }
+
+        int[] colIds = new int[Math.toIntExact(total)];
+        int[] values = new int[colIds.length];
+        Workers.parallelFor(parallelism, 0, n, GENERATOR_ROWS_PER_TASK, (from, to) -> {
+            for (int i = from; i < to; i++)
+                sampleRow(i, n, density, seed, colIds, values, rowStarts[i]);
+        });
 
-                /*
-                 * If there are more values to put than there are spaces below the current row,
-                 * repeat the loop.
-                 */
-                valuesRemaining = m.numberOfValues - valuesInserted;
-                spaceRemaining = n * (n - i - 1);
+        SparseMatrix m = new SparseMatrix(n, rowStarts, colIds, values);
+        event.finish(m);
+        return m;
+    }
+
+    /**
+     * Draws the columns of a single row of a random matrix.
+     * If the arrays are given, the columns and their random values are written starting at the offset.
+     *
+     * @return the number of values in the row
+     */
+    private static int sampleRow(int row, int n, double density, long seed, int[] colIds, int[] values, int offset) {
+        if (density <= 0) return 0;
+        SplittableRandom columns = new SplittableRandom(streamSeed(seed, 2L * row));
+        SplittableRandom numbers = new SplittableRandom(streamSeed(seed, 2L * row + 1));
+        double logOfMiss = Math.log1p(-Math.min(density, 1));
+        int count = 0;
+        for (long j = nextColumn(-1, columns, logOfMiss); j < n; j = nextColumn(j, columns, logOfMiss)) {
+            if (colIds != null) {
+                colIds[offset + count] = (int) j;
+                values[offset + count] = 1 + numbers.nextInt(4);
             }
-            while (valuesRemaining > spaceRemaining);
+            count++;
         }
+        return count;
+    }
+
+    /**
+     * Derives the seed of one of the row generators.
+     * The seeds are scrambled (with the SplitMix64 finalizer) so that the sequences
+     * of neighbouring rows do not overlap.
+     */
+    private static long streamSeed(long seed, long stream) {
+        long z = seed + stream * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
 
-        /*
-         * If all the values were put before the end of the rows was reached,
-         * mark those rows as empty (starting at an index after the range).
-         */
-        for (int i = n - 1; i > 0; i--) {
-            if (m.rowStarts[i] > m.rowStarts[i-1]) break;
-            m.rowStarts[i] = m.numberOfValues;
+    /** Returns the column of the next value after the given one, by skipping a geometrically distributed gap. */
+    private static long nextColumn(long column, SplittableRandom random, double logOfMiss) {
+        // Every cell is filled when the density is 1.
+        if (logOfMiss == Double.NEGATIVE_INFINITY) return column + 1;
+        double skip = Math.floor(Math.log1p(-random.nextDouble()) / logOfMiss);
+        return skip >= Integer.MAX_VALUE ? Long.MAX_VALUE : column + 1 + (long) skip;
+    }
+
+    /** Converts a dense matrix into the compressed row format, keeping only its non-zero values. */
+    public static SparseMatrix fromDense(IntMatrix m) {
+        int n = m.getDim();
+        int[] rowStarts = new int[n];
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            rowStarts[i] = Math.toIntExact(total);
+            for (int j = 0; j < n; j++)
+                if (m.get(i, j) != 0) total++;
         }
 
-        return m;
+        int[] colIds = new int[Math.toIntExact(total)];
+        int[] values = new int[colIds.length];
+        int valuesInserted = 0;
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++) {
+                int value = m.get(i, j);
+                if (value == 0) continue;
+                colIds[valuesInserted] = j;
+                values[valuesInserted] = value;
+                valuesInserted++;
+            }
+        return new SparseMatrix(n, rowStarts, colIds, values);
+    }
+
+    /** Converts a sparse matrix into a dense one. */
+    public static IntMatrix toDense(SparseMatrix m) {
+        IntMatrix dense = new IntMatrix(m.dimension);
+        for (int i = 0; i < m.dimension; i++)
+            for (int valIndex = m.rowStarts[i]; valIndex < m.rowEnd(i); valIndex++)
+                dense.set(i, m.colIds[valIndex], m.values[valIndex]);
+        return dense;
+    }
+
+    /**
+     * Writes the matrix to a file in the binary format of {@link MappedSparseMatrix}.
+     * An existing file is replaced.
+     */
+    public static void save(SparseMatrix m, Path file) throws IOException {
+        KernelEvent event = KernelEvent.start("sparse", KernelEvent.WRITE, m.dimension, 1);
+        MappedSparseMatrix.from(m, file).close();
+        event.finish(m);
+    }
+
+    /**
+     * Reads a matrix from a file in the binary format of {@link MappedSparseMatrix}.
+     * The file is memory-mapped and its arrays are copied onto the heap as they are, without parsing.
+     *
+     * @see MatrixMarket#convert(Path, Path) to create such a file from a Matrix Market file
+     */
+    public static SparseMatrix load(Path file) throws IOException {
+        try (MappedSparseMatrix mapped = MappedSparseMatrix.open(file)) {
+            return mapped.toSparseMatrix();
+        }
     }
 
     private static void multiplyValueByRow(SparseMatrix a, SparseMatrix b, IntMatrix product,
@@ -90,33 +204,321 @@ public class SparseMatrix {
         }
     }
 
+    /** Multiplies the rows of a in the range [fromRow, toRow) by b, adding to the same rows of the product. */
+    private static void multiplyRows(SparseMatrix a, SparseMatrix b, IntMatrix product, int fromRow, int toRow) {
+        for (int rowIndex = fromRow; rowIndex < toRow; rowIndex++)
+            for (int valIndex = a.rowStarts[rowIndex]; valIndex < a.rowEnd(rowIndex); valIndex++)
+                multiplyValueByRow(a, b, product, valIndex, rowIndex);
+    }
+
     public static IntMatrix multiply(SparseMatrix a, SparseMatrix b) {
+        KernelEvent event = KernelEvent.start("sparse", KernelEvent.NUMERIC, a.dimension, 1);
         IntMatrix product = new IntMatrix(a.dimension);
-        if (a.dimension == 0) return product;
-        for (int rowIndex = 0; rowIndex < a.dimension - 1; rowIndex++)
-            for (int valIndex = a.rowStarts[rowIndex]; valIndex < a.rowStarts[rowIndex + 1]; valIndex++)
-                multiplyValueByRow(a, b, product, valIndex, rowIndex);
-        for (int valIndInA = a.rowStarts[a.dimension - 1]; valIndInA < a.numberOfValues; valIndInA++)
-            multiplyValueByRow(a, b, product, valIndInA, a.dimension - 1);
+        multiplyRows(a, b, product, 0, a.dimension);
+        event.finish(a);
 
         // For this practical, we don't care about the result, so simple ignore returned value.
         return product;  // Otherwise, use a method to convert the product into a SparseMatrix.
     }
 
-    private int dimension;
-    private double density;
-    private int numberOfValues;
-    private int[] rowStarts;
-    private int[] colIds;
-    private int[] values;
+    /**
+     * Multiplies two sparse matrices and keeps the product in the compressed row format (Gustavson's algorithm).
+     * A symbolic pass first counts the distinct columns in each row of the product, so that its arrays
+     * can be allocated with their exact size. The numeric pass then accumulates each row in a dense
+     * accumulator, visiting only the columns recorded for that row.
+     * Memory use grows with the number of values in the product rather than with the square of the dimension.
+     * Values that cancel out to zero are kept, as the structure is decided before the values are known.
+     *
+     * @throws ArithmeticException if the product has more values than fit in an array
+     */
+    public static SparseMatrix sparseMultiply(SparseMatrix a, SparseMatrix b) {
+        int n = a.dimension;
+        KernelEvent symbolic = KernelEvent.start("sparse-output", KernelEvent.SYMBOLIC, n, 1);
+        int[] rowStarts = new int[n];
+        // marker[j] == i when column j has already been seen in row i of the product.
+        int[] marker = new int[n];
+        Arrays.fill(marker, -1);
+
+        // Symbolic pass: count the values in each row of the product.
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            rowStarts[i] = Math.toIntExact(total);
+            for (int valIndInA = a.rowStarts[i]; valIndInA < a.rowEnd(i); valIndInA++) {
+                int rowIndInB = a.colIds[valIndInA];
+                for (int valIndInB = b.rowStarts[rowIndInB]; valIndInB < b.rowEnd(rowIndInB); valIndInB++) {
+                    int j = b.colIds[valIndInB];
+                    if (marker[j] == i) continue;
+                    marker[j] = i;
+                    total++;
+                }
+            }
+        }
+        int[] colIds = new int[Math.toIntExact(total)];
+        int[] values = new int[colIds.length];
+        symbolic.finish(a);
+
+        // Numeric pass: accumulate each row and copy it out in column order.
+        KernelEvent numeric = KernelEvent.start("sparse-output", KernelEvent.NUMERIC, n, 1);
+        int[] accumulator = new int[n];
+        Arrays.fill(marker, -1);
+        for (int i = 0; i < n; i++) {
+            int start = rowStarts[i];
+            int end = start;
+            for (int valIndInA = a.rowStarts[i]; valIndInA < a.rowEnd(i); valIndInA++) {
+                int rowIndInB = a.colIds[valIndInA];
+                int valueInA = a.values[valIndInA];
+                for (int valIndInB = b.rowStarts[rowIndInB]; valIndInB < b.rowEnd(rowIndInB); valIndInB++) {
+                    int j = b.colIds[valIndInB];
+                    int product = valueInA * b.values[valIndInB];
+                    if (marker[j] == i) accumulator[j] += product;
+                    else {
+                        marker[j] = i;
+                        colIds[end++] = j;
+                        accumulator[j] = product;
+                    }
+                }
+            }
+            Arrays.sort(colIds, start, end);
+            for (int valIndex = start; valIndex < end; valIndex++)
+                values[valIndex] = accumulator[colIds[valIndex]];
+        }
+
+        numeric.finish(a);
+        return new SparseMatrix(n, rowStarts, colIds, values);
+    }
 
-    private SparseMatrix(int n, double density) {
+    /**
+     * Multiplies a sparse matrix by a dense one, without converting either.
+     * Each value a[i][k] scales row k of b and adds it to row i of the product, so both the rows of a
+     * and the rows of b and of the product are read and written contiguously.
+     * The cost grows with the number of values in a times the dimension.
+     */
+    public static IntMatrix multiply(SparseMatrix a, IntMatrix b) {
+        int n = checkDimensions(a.dimension, b.getDim());
+        KernelEvent event = KernelEvent.start("sparse-dense", KernelEvent.NUMERIC, n, 1);
+        IntMatrix product = new IntMatrix(n);
+        int[] bValues = b.values, cValues = product.values;
+        for (int i = 0; i < n; i++) {
+            int cRow = i * n;
+            for (int valIndex = a.rowStarts[i]; valIndex < a.rowEnd(i); valIndex++) {
+                int value = a.values[valIndex];
+                int bRow = a.colIds[valIndex] * n;
+                for (int j = 0; j < n; j++)
+                    cValues[cRow + j] += value * bValues[bRow + j];
+            }
+        }
+        event.finish(a);
+        return product;
+    }
+
+    /**
+     * Multiplies a dense matrix by a sparse one, without converting either.
+     * Each non-zero a[i][k] scales the sparse row k of b and scatters it into row i of the product,
+     * so the rows of b are streamed once for every non-zero in their column of a, and the zeros of a cost
+     * a single comparison each.
+     * The cost grows with the number of non-zeros in a times the average number of values in a row of b.
+     */
+    public static IntMatrix multiply(IntMatrix a, SparseMatrix b) {
+        int n = checkDimensions(b.dimension, a.getDim());
+        KernelEvent event = KernelEvent.start("dense-sparse", KernelEvent.NUMERIC, n, 1);
+        IntMatrix product = new IntMatrix(n);
+        int[] aValues = a.values, cValues = product.values;
+        for (int i = 0; i < n; i++) {
+            int row = i * n;
+            for (int k = 0; k < n; k++) {
+                int value = aValues[row + k];
+                if (value == 0) continue;
+                for (int valIndex = b.rowStarts[k]; valIndex < b.rowEnd(k); valIndex++)
+                    cValues[row + b.colIds[valIndex]] += value * b.values[valIndex];
+            }
+        }
+        event.finish(b);
+        return product;
+    }
+
+    static int checkDimensions(int sparseDimension, int denseDimension) {
+        if (sparseDimension != denseDimension)
+            throw new IllegalArgumentException("Cannot multiply matrices of dimensions "
+                    + sparseDimension + " and " + denseDimension);
+        return sparseDimension;
+    }
+
+    /**
+     * Performs the sparse multiplication using as many threads as there are available processors.
+     *
+     * @see SparseMatrix#parallelMultiply(SparseMatrix, SparseMatrix, int)
+     */
+    public static IntMatrix parallelMultiply(SparseMatrix a, SparseMatrix b) {
+        return parallelMultiply(a, b, Workers.defaultParallelism());
+    }
+
+    /**
+     * A multi-threaded version of {@link SparseMatrix#multiply(SparseMatrix, SparseMatrix)}.
+     * The rows of a are split into chunks holding roughly the same number of values,
+     * so that a few dense rows do not leave the other threads idle.
+     * Each chunk writes only to its own rows of the product, so no locks are needed.
+     *
+     * @param parallelism the number of threads to use
+     */
+    public static IntMatrix parallelMultiply(SparseMatrix a, SparseMatrix b, int parallelism) {
+        KernelEvent event = KernelEvent.start("parallel-sparse", KernelEvent.NUMERIC, a.dimension, parallelism);
+        IntMatrix product = new IntMatrix(a.dimension);
+        multiplyAdd(a, b, product, parallelism);
+        event.finish(a);
+        return product;
+    }
+
+    /** Adds a * b to the product, splitting the rows of a into balanced chunks between the given number of threads. */
+    static void multiplyAdd(SparseMatrix a, SparseMatrix b, IntMatrix product, int parallelism) {
+        int[] bounds = a.balancedRowChunks(parallelism * CHUNKS_PER_THREAD);
+        Workers.parallelFor(parallelism, 0, bounds.length - 1, 1, (from, to) -> {
+            for (int chunk = from; chunk < to; chunk++)
+                multiplyRows(a, b, product, bounds[chunk], bounds[chunk + 1]);
+        });
+    }
+
+    /**
+     * Multiplies the matrix by a vector, y = a * x, without allocating anything.
+     * Each value of the matrix is read exactly once, so repeating this in a loop (as iterative solvers do)
+     * streams the compressed row arrays through memory.
+     *
+     * @param x the vector to multiply, as long as the dimension of a
+     * @param y the vector to write the product to, as long as the dimension of a
+     */
+    public static void multiply(SparseMatrix a, int[] x, int[] y) {
+        checkVectors(a, x.length, y.length);
+        multiplyVectorRows(a, x, y, 0, a.dimension);
+    }
+
+    /**
+     * Multiplies the matrix by a vector of doubles, y = a * x, without allocating anything.
+     *
+     * @see SparseMatrix#multiply(SparseMatrix, int[], int[])
+     */
+    public static void multiply(SparseMatrix a, double[] x, double[] y) {
+        checkVectors(a, x.length, y.length);
+        multiplyVectorRows(a, x, y, 0, a.dimension);
+    }
+
+    /**
+     * A multi-threaded version of {@link SparseMatrix#multiply(SparseMatrix, int[], int[])}.
+     * The rows are split into chunks holding roughly the same number of values, as in
+     * {@link SparseMatrix#parallelMultiply(SparseMatrix, SparseMatrix, int)}. Each chunk writes only its own part of y.
+     * Only the chunk bounds and the tasks are allocated, never anything the size of the matrix.
+     *
+     * @param parallelism the number of threads to use
+     */
+    public static void parallelMultiply(SparseMatrix a, int[] x, int[] y, int parallelism) {
+        checkVectors(a, x.length, y.length);
+        int[] bounds = a.balancedRowChunks(parallelism * CHUNKS_PER_THREAD);
+        Workers.parallelFor(parallelism, 0, bounds.length - 1, 1, (from, to) -> {
+            for (int chunk = from; chunk < to; chunk++)
+                multiplyVectorRows(a, x, y, bounds[chunk], bounds[chunk + 1]);
+        });
+    }
+
+    /**
+     * A multi-threaded version of {@link SparseMatrix#multiply(SparseMatrix, double[], double[])}.
+     *
+     * @param parallelism the number of threads to use
+     * @see SparseMatrix#parallelMultiply(SparseMatrix, int[], int[], int)
+     */
+    public static void parallelMultiply(SparseMatrix a, double[] x, double[] y, int parallelism) {
+        checkVectors(a, x.length, y.length);
+        int[] bounds = a.balancedRowChunks(parallelism * CHUNKS_PER_THREAD);
+        Workers.parallelFor(parallelism, 0, bounds.length - 1, 1, (from, to) -> {
+            for (int chunk = from; chunk < to; chunk++)
+                multiplyVectorRows(a, x, y, bounds[chunk], bounds[chunk + 1]);
+        });
+    }
+
+    /** Writes the rows in the range [fromRow, toRow) of a * x to y. */
+    private static void multiplyVectorRows(SparseMatrix a, int[] x, int[] y, int fromRow, int toRow) {
+        int[] colIds = a.colIds, values = a.values;
+        for (int row = fromRow; row < toRow; row++) {
+            int sum = 0;
+            for (int valIndex = a.rowStarts[row], end = a.rowEnd(row); valIndex < end; valIndex++)
+                sum += values[valIndex] * x[colIds[valIndex]];
+            y[row] = sum;
+        }
+    }
+
+    /** Writes the rows in the range [fromRow, toRow) of a * x to y. */
+    private static void multiplyVectorRows(SparseMatrix a, double[] x, double[] y, int fromRow, int toRow) {
+        int[] colIds = a.colIds, values = a.values;
+        for (int row = fromRow; row < toRow; row++) {
+            double sum = 0;
+            for (int valIndex = a.rowStarts[row], end = a.rowEnd(row); valIndex < end; valIndex++)
+                sum += values[valIndex] * x[colIds[valIndex]];
+            y[row] = sum;
+        }
+    }
+
+    private static void checkVectors(SparseMatrix a, int xLength, int yLength) {
+        if (xLength != a.dimension || yLength != a.dimension)
+            throw new IllegalArgumentException("Vectors of length " + xLength + " and " + yLength
+                    + " do not fit a matrix of dimension " + a.dimension);
+    }
+
+    /**
+     * Splits the rows into consecutive chunks that hold about the same number of values.
+     * Chunk c covers the rows in [bounds[c], bounds[c + 1]).
+     * Rows are never split, so a single row with more values than the target forms a chunk on its own.
+     *
+     * @param chunks the number of chunks to aim for
+     * @return the row bounds of the chunks, starting with 0 and ending with the dimension
+     */
+    int[] balancedRowChunks(int chunks) {
+        chunks = Math.max(1, Math.min(chunks, dimension));
+        int[] bounds = new int[chunks + 1];
+        int count = 1;
+        for (int c = 1; c < chunks; c++) {
+            // The first row that starts at or after this chunk's share of the values.
+            long target = (long) numberOfValues * c / chunks;
+            int row = firstRowStartingAt((int) target, bounds[count - 1] + 1);
+            if (row >= dimension) break;
+            bounds[count++] = row;
+        }
+        bounds[count++] = dimension;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /** Binary search for the first row, no earlier than the given one, whose values start at or after the index. */
+    private int firstRowStartingAt(int valueIndex, int lowestRow) {
+        int low = lowestRow, high = dimension;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (rowStarts[middle] < valueIndex) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    int dimension;
+    double density;
+    int numberOfValues;
+    int[] rowStarts;
+    int[] colIds;
+    int[] values;
+
+    /** Wraps arrays that already hold a matrix in the compressed row format. */
+    SparseMatrix(int n, int[] rowStarts, int[] colIds, int[] values) {
         this.dimension = n;
-        this.density = density;
-        this.numberOfValues = (int) Math.floor(density * n * n);
-        this.rowStarts = new int[this.dimension];
-        this.colIds = new int[this.numberOfValues];
-        this.values = new int[this.numberOfValues];
+        this.density = n == 0 ? 0 : (double) values.length / n / n;
+        this.numberOfValues = values.length;
+        this.rowStarts = rowStarts;
+        this.colIds = colIds;
+        this.values = values;
+    }
+
+    /** Returns the proportion of cells that hold a value. */
+    double getDensity() {
+        return density;
+    }
+
+    /** Returns the index just after the last value of the given row. */
+    int rowEnd(int row) {
+        return row + 1 < dimension ? rowStarts[row + 1] : numberOfValues;
     }
 
     @Override
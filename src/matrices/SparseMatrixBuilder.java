@@ -0,0 +1,406 @@
+package matrices;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a {@link SparseMatrix} from (row, column, value) triples given in any order (the coordinate format),
+ * possibly by many threads at once. Triples with the same row and column are added together.
+ * <p>
+ * Every thread appends to a chunk of its own, a plain int array, so nothing is boxed and adding a triple
+ * takes no lock. Full chunks are handed to the builder; once more triples are held than the memory budget
+ * allows, further chunks are spilled to a temporary file.
+ * <p>
+ * {@link SparseMatrixBuilder#build()} sorts the triples by row with a parallel counting sort. Every task takes
+ * a share of the chunks and counts the triples of every row in a histogram of its own; the prefix sums of the
+ * histograms give every task its own range within every row, which it fills without atomics, so rows with
+ * many triples do not make the tasks contend. The rows are then sorted by column and their duplicates
+ * combined, all in parallel. So that the histograms take no more memory than the triples, there are
+ * at most as many tasks as triples per row.
+ * If triples were spilled, the rows are processed in bands that fit the memory budget,
+ * reading the chunks again for every band.
+ * <p>
+ * Usage:
+ * <pre>
+ * SparseMatrixBuilder builder = new SparseMatrixBuilder(n);
+ * // in every thread:
+ * SparseMatrixBuilder.Appender appender = builder.appender();
+ * appender.add(row, col, value);
+ * // once all threads are done:
+ * SparseMatrix m = builder.build();
+ * </pre>
+ */
+public class SparseMatrixBuilder {
+
+    /** The number of triples in a chunk. */
+    private static final int CHUNK_ENTRIES = 1 << 16;
+    /** The bytes a triple needs while it is held, while it is sorted and once it is built. */
+    private static final int BYTES_PER_ENTRY = 3 * Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+    /** The most triples sorted at once, as they are sorted in a single array. */
+    private static final int MAX_BAND_ENTRIES = Integer.MAX_VALUE - 8;
+    private static final int ROWS_PER_TASK = 256;
+
+    private final int dimension;
+    private final long maxInMemoryEntries;
+    private final Path spillDirectory;
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final List<Appender> appenders = new ArrayList<>();
+    private final ThreadLocal<Appender> threadAppender = ThreadLocal.withInitial(this::appender);
+    private long inMemoryEntries = 0;
+    private Path spillFile = null;
+    private FileChannel spill = null;
+    private long spillEnd = 0;
+    /** Volatile so that adding triples, which takes no lock, sees it; a volatile read costs next to nothing. */
+    private volatile boolean built = false;
+
+    /**
+     * Creates a builder that may hold about a quarter of the heap's worth of triples in memory
+     * before it spills them to the temporary directory.
+     */
+    public SparseMatrixBuilder(int n) {
+        this(n, Runtime.getRuntime().maxMemory() / 4 / BYTES_PER_ENTRY, null);
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @param n                  the dimension of the matrix
+     * @param maxInMemoryEntries the most triples held in memory; more are spilled to disk
+     * @param spillDirectory     the directory of the spill file, or null for the default temporary directory
+     */
+    public SparseMatrixBuilder(int n, long maxInMemoryEntries, Path spillDirectory) {
+        if (n < 0) throw new IllegalArgumentException("Dimension must not be negative: " + n);
+        this.dimension = n;
+        this.maxInMemoryEntries = Math.max(CHUNK_ENTRIES, maxInMemoryEntries);
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Returns an appender for the calling thread to add triples through.
+     * An appender is not thread safe; each thread should use its own.
+     */
+    public Appender appender() {
+        Appender appender = new Appender();
+        synchronized (this) {
+            checkNotBuilt();
+            appenders.add(appender);
+        }
+        return appender;
+    }
+
+    /**
+     * Adds a triple through the calling thread's own appender.
+     * This is convenient but looks up the appender every time; a loop adding many triples should use
+     * {@link SparseMatrixBuilder#appender()}.
+     */
+    public void add(int row, int col, int value) {
+        threadAppender.get().add(row, col, value);
+    }
+
+    /** Adds triples to one chunk of its own, without locking. */
+    public final class Appender {
+
+        private Chunk current = new Chunk();
+
+        private Appender() {
+        }
+
+        /**
+         * Adds a value to the cell. Values added to the same cell more than once are added together.
+         *
+         * @throws IndexOutOfBoundsException if the cell is outside the matrix
+         * @throws IllegalStateException     if the matrix has already been built
+         */
+        public void add(int row, int col, int value) {
+            checkNotBuilt();
+            if (row < 0 || row >= dimension || col < 0 || col >= dimension)
+                throw new IndexOutOfBoundsException("Cell (" + row + ", " + col + ") is outside a matrix of dimension " + dimension);
+            Chunk chunk = current;
+            int at = 3 * chunk.size;
+            chunk.triples[at] = row;
+            chunk.triples[at + 1] = col;
+            chunk.triples[at + 2] = value;
+            if (++chunk.size == CHUNK_ENTRIES) {
+                seal(chunk);
+                current = new Chunk();
+            }
+        }
+    }
+
+    /** A block of triples, held in memory or spilled to the file. */
+    private static final class Chunk {
+
+        int[] triples = new int[3 * CHUNK_ENTRIES];
+        int size = 0;
+        /** The position of the triples in the spill file, if they have been spilled. */
+        long spillPosition = -1;
+    }
+
+    /** Hands a chunk over to the builder, spilling it if the builder holds too many triples in memory. */
+    private void seal(Chunk chunk) {
+        long position;
+        synchronized (this) {
+            checkNotBuilt();
+            chunks.add(chunk);
+            if (inMemoryEntries + chunk.size <= maxInMemoryEntries) {
+                inMemoryEntries += chunk.size;
+                return;
+            }
+            position = spillEnd;
+            spillEnd += 3L * chunk.size * Integer.BYTES;
+        }
+        // The space in the file is reserved, so the chunk can be written without holding the lock.
+        try {
+            ByteBuffer bytes = ByteBuffer.allocate(3 * chunk.size * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asIntBuffer().put(chunk.triples, 0, 3 * chunk.size);
+            FileChannel channel = spillChannel();
+            while (bytes.hasRemaining())
+                channel.write(bytes, position + bytes.position());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        chunk.spillPosition = position;
+        chunk.triples = null;
+    }
+
+    private synchronized FileChannel spillChannel() throws IOException {
+        if (spill == null) {
+            spillFile = spillDirectory == null
+                    ? Files.createTempFile("coo", ".spill")
+                    : Files.createTempFile(spillDirectory, "coo", ".spill");
+            spill = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        return spill;
+    }
+
+    private void checkNotBuilt() {
+        if (built) throw new IllegalStateException("The matrix has already been built");
+    }
+
+    /**
+     * Builds the matrix using as many threads as there are available processors.
+     *
+     * @see SparseMatrixBuilder#build(int)
+     */
+    public SparseMatrix build() {
+        return build(Workers.defaultParallelism());
+    }
+
+    /**
+     * Builds the matrix from every triple added so far. All the threads adding triples must be done.
+     * The builder cannot be used afterwards, and its spill file is deleted.
+     *
+     * @param parallelism the number of threads to use
+     * @throws ArithmeticException if the matrix has more values than fit in an array
+     */
+    public SparseMatrix build(int parallelism) {
+        synchronized (this) {
+            checkNotBuilt();
+            for (Appender appender : appenders)
+                if (appender.current.size > 0) chunks.add(appender.current);
+            built = true;
+        }
+        try {
+            return sort(parallelism);
+        }
+        finally {
+            chunks.clear();
+            appenders.clear();
+            closeSpill();
+        }
+    }
+
+    private SparseMatrix sort(int parallelism) {
+        int n = dimension;
+        Chunk[] all = chunks.toArray(new Chunk[0]);
+        long totalEntries = 0;
+        for (Chunk chunk : all)
+            totalEntries += chunk.size;
+
+        // Count the triples of every row, in a histogram for every task.
+        int tasks = (int) Math.max(1, Math.min(Math.min(parallelism, all.length), totalEntries / Math.max(1, n)));
+        int[][] histograms = new int[tasks][];
+        Workers.parallelFor(parallelism, 0, tasks, 1, (from, to) -> {
+            for (int task = from; task < to; task++) {
+                int[] histogram = new int[n];
+                for (int c = firstChunk(task, tasks, all.length); c < firstChunk(task + 1, tasks, all.length); c++) {
+                    int[] triples = read(all[c]);
+                    for (int t = 0; t < all[c].size; t++)
+                        histogram[triples[3 * t]]++;
+                }
+                histograms[task] = histogram;
+            }
+        });
+        int[] rowCounts = new int[n];
+        Workers.parallelFor(parallelism, 0, n, ROWS_PER_TASK, (from, to) -> {
+            for (int[] histogram : histograms)
+                for (int i = from; i < to; i++)
+                    rowCounts[i] += histogram[i];
+        });
+
+        // Cut the rows into bands of at most the budget (a single band when nothing was spilled).
+        long budget = spill == null ? MAX_BAND_ENTRIES : Math.min(maxInMemoryEntries, MAX_BAND_ENTRIES);
+        List<int[]> bandColIds = new ArrayList<>();
+        List<int[]> bandValues = new ArrayList<>();
+        int[] rowStarts = new int[n];
+        long total = 0;
+        int bandStart = 0;
+        while (bandStart < n) {
+            int bandEnd = bandStart;
+            long entries = 0;
+            while (bandEnd < n && (bandEnd == bandStart || entries + rowCounts[bandEnd] <= budget))
+                entries += rowCounts[bandEnd++];
+            int[][] band = sortBand(all, histograms, rowCounts, bandStart, bandEnd, Math.toIntExact(entries), parallelism);
+            int[] uniqueCounts = band[2];
+            for (int i = bandStart; i < bandEnd; i++) {
+                rowStarts[i] = Math.toIntExact(total);
+                total += uniqueCounts[i - bandStart];
+            }
+            bandColIds.add(band[0]);
+            bandValues.add(band[1]);
+            bandStart = bandEnd;
+        }
+
+        int[] colIds, values;
+        if (bandColIds.size() == 1) {
+            colIds = bandColIds.get(0);
+            values = bandValues.get(0);
+        }
+        else {
+            colIds = new int[Math.toIntExact(total)];
+            values = new int[colIds.length];
+            int at = 0;
+            for (int b = 0; b < bandColIds.size(); b++) {
+                System.arraycopy(bandColIds.get(b), 0, colIds, at, bandColIds.get(b).length);
+                System.arraycopy(bandValues.get(b), 0, values, at, bandValues.get(b).length);
+                at += bandColIds.get(b).length;
+            }
+        }
+        return new SparseMatrix(n, rowStarts, colIds, values);
+    }
+
+    /** Returns the first chunk of a task, the chunks being shared out evenly between the tasks. */
+    private static int firstChunk(int task, int tasks, int numberOfChunks) {
+        return (int) ((long) task * numberOfChunks / tasks);
+    }
+
+    /**
+     * Sorts the triples of the rows in [bandStart, bandEnd) and combines their duplicates.
+     * The histograms of the band's rows are turned into the write cursors of their tasks.
+     *
+     * @return the columns and the values of the band, and the number of distinct columns in each of its rows
+     */
+    private int[][] sortBand(Chunk[] all, int[][] histograms, int[] rowCounts, int bandStart, int bandEnd,
+                             int entries, int parallelism) {
+        int rows = bandEnd - bandStart;
+        int[] starts = new int[rows + 1];
+        for (int i = 0; i < rows; i++)
+            starts[i + 1] = starts[i] + rowCounts[bandStart + i];
+        // Within a row, the triples of task 0 come first, then those of task 1, and so on.
+        Workers.parallelFor(parallelism, 0, rows, ROWS_PER_TASK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int cursor = starts[i];
+                for (int[] histogram : histograms) {
+                    int count = histogram[bandStart + i];
+                    histogram[bandStart + i] = cursor;
+                    cursor += count;
+                }
+            }
+        });
+
+        // Place every triple of the band in its row, packed as (column, value) so that a row sorts by column.
+        long[] packed = new long[entries];
+        int tasks = histograms.length;
+        Workers.parallelFor(parallelism, 0, tasks, 1, (from, to) -> {
+            for (int task = from; task < to; task++) {
+                int[] cursors = histograms[task];
+                for (int c = firstChunk(task, tasks, all.length); c < firstChunk(task + 1, tasks, all.length); c++) {
+                    int[] triples = read(all[c]);
+                    for (int t = 0; t < all[c].size; t++) {
+                        int row = triples[3 * t];
+                        if (row < bandStart || row >= bandEnd) continue;
+                        packed[cursors[row]++] = (long) triples[3 * t + 1] << 32 | (triples[3 * t + 2] & 0xFFFFFFFFL);
+                    }
+                }
+            }
+        });
+
+        // Sort every row and combine its duplicates at the start of its range.
+        int[] uniqueCounts = new int[rows];
+        Workers.parallelFor(parallelism, 0, rows, ROWS_PER_TASK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int start = starts[i], end = starts[i + 1];
+                if (start == end) continue;
+                Arrays.sort(packed, start, end);
+                int last = start;
+                for (int at = start + 1; at < end; at++) {
+                    if ((int) (packed[at] >>> 32) == (int) (packed[last] >>> 32)) {
+                        int sum = (int) packed[last] + (int) packed[at];
+                        packed[last] = (packed[last] & 0xFFFFFFFF00000000L) | (sum & 0xFFFFFFFFL);
+                    }
+                    else packed[++last] = packed[at];
+                }
+                uniqueCounts[i] = last - start + 1;
+            }
+        });
+
+        int[] offsets = new int[rows + 1];
+        for (int i = 0; i < rows; i++)
+            offsets[i + 1] = offsets[i] + uniqueCounts[i];
+        int[] colIds = new int[offsets[rows]];
+        int[] values = new int[colIds.length];
+        Workers.parallelFor(parallelism, 0, rows, ROWS_PER_TASK, (from, to) -> {
+            for (int i = from; i < to; i++)
+                for (int k = 0; k < uniqueCounts[i]; k++) {
+                    long entry = packed[starts[i] + k];
+                    colIds[offsets[i] + k] = (int) (entry >>> 32);
+                    values[offsets[i] + k] = (int) entry;
+                }
+        });
+        return new int[][]{colIds, values, uniqueCounts};
+    }
+
+    /** Returns the triples of the chunk, reading them from the spill file if they were spilled. */
+    private int[] read(Chunk chunk) {
+        if (chunk.triples != null) return chunk.triples;
+        try {
+            ByteBuffer bytes = ByteBuffer.allocate(3 * chunk.size * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (bytes.hasRemaining())
+                if (spill.read(bytes, chunk.spillPosition + bytes.position()) < 0)
+                    throw new IOException("The spill file ended early");
+            bytes.flip();
+            IntBuffer ints = bytes.asIntBuffer();
+            int[] triples = new int[3 * chunk.size];
+            ints.get(triples);
+            return triples;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void closeSpill() {
+        if (spill == null) return;
+        try {
+            spill.close();
+            Files.deleteIfExists(spillFile);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        spill = null;
+    }
+}
@@ -0,0 +1,162 @@
+package matrices;
+
+/**
+ * The Strassen-Winograd multiplication of square matrices stored in row-major arrays.
+ * It uses 7 multiplications and 15 additions of half-sized blocks instead of 8 multiplications,
+ * giving O(n^2.81) operations. Integer overflow wraps around, and the formulas hold for wrapped arithmetic
+ * too, so the result is the same as the one of the classical multiplication.
+ * <p>
+ * The recursion stops once the blocks are no larger than the leaf size, where the classical i-k-j kernel is used.
+ * The matrices are padded with zeros to the leaf-sized block times a power of two.
+ * Every level of the recursion needs two temporary blocks; these are allocated once per multiplication.
+ */
+final class Strassen {
+
+    /** A square block inside a row-major array. */
+    private static final class Block {
+
+        final int[] values;
+        final int offset;
+        final int stride;
+
+        Block(int[] values, int offset, int stride) {
+            this.values = values;
+            this.offset = offset;
+            this.stride = stride;
+        }
+
+        /** Returns the quadrant at the given block row and column, where each quadrant has dimension half. */
+        Block quadrant(int row, int col, int half) {
+            return new Block(values, offset + (row * stride + col) * half, stride);
+        }
+    }
+
+    private final int levels;
+    /** The two temporary blocks of each level (counting from the top). */
+    private final Block[] x, y;
+
+    private Strassen(int paddedDim, int levels) {
+        this.levels = levels;
+        this.x = new Block[levels];
+        this.y = new Block[levels];
+        for (int level = 0; level < levels; level++) {
+            int half = paddedDim >> (level + 1);
+            x[level] = new Block(new int[half * half], 0, half);
+            y[level] = new Block(new int[half * half], 0, half);
+        }
+    }
+
+    /**
+     * Multiplies a by b into c (all row-major with the given dimension).
+     * c must be zero or be otherwise safe to overwrite.
+     *
+     * @param leafSize the largest block that is multiplied with the classical kernel
+     */
+    static void multiply(int[] a, int[] b, int[] c, int dim, int leafSize) {
+        // Halve the dimension (rounding up) until it fits in a leaf.
+        int levels = 0;
+        int leafDim = dim;
+        while (leafDim > leafSize) {
+            leafDim = (leafDim + 1) / 2;
+            levels++;
+        }
+        int paddedDim = leafDim << levels;
+
+        if (paddedDim == dim) {
+            new Strassen(dim, levels).multiply(
+                    new Block(a, 0, dim), new Block(b, 0, dim), new Block(c, 0, dim), dim, 0);
+            return;
+        }
+
+        int[] paddedA = pad(a, dim, paddedDim), paddedB = pad(b, dim, paddedDim);
+        int[] paddedC = new int[paddedDim * paddedDim];
+        new Strassen(paddedDim, levels).multiply(new Block(paddedA, 0, paddedDim),
+                new Block(paddedB, 0, paddedDim), new Block(paddedC, 0, paddedDim), paddedDim, 0);
+        for (int i = 0; i < dim; i++)
+            System.arraycopy(paddedC, i * paddedDim, c, i * dim, dim);
+    }
+
+    /** Copies a matrix into the top left corner of a larger one filled with zeros. */
+    private static int[] pad(int[] m, int dim, int paddedDim) {
+        int[] padded = new int[paddedDim * paddedDim];
+        for (int i = 0; i < dim; i++)
+            System.arraycopy(m, i * dim, padded, i * paddedDim, dim);
+        return padded;
+    }
+
+    /** Sets c to a * b, where all are blocks of dimension n, using the temporaries of the given level. */
+    private void multiply(Block a, Block b, Block c, int n, int level) {
+        if (level == levels) {
+            classical(a, b, c, n);
+            return;
+        }
+
+        int h = n / 2;
+        Block a11 = a.quadrant(0, 0, h), a12 = a.quadrant(0, 1, h), a21 = a.quadrant(1, 0, h), a22 = a.quadrant(1, 1, h);
+        Block b11 = b.quadrant(0, 0, h), b12 = b.quadrant(0, 1, h), b21 = b.quadrant(1, 0, h), b22 = b.quadrant(1, 1, h);
+        Block c11 = c.quadrant(0, 0, h), c12 = c.quadrant(0, 1, h), c21 = c.quadrant(1, 0, h), c22 = c.quadrant(1, 1, h);
+        Block x = this.x[level], y = this.y[level];
+        int next = level + 1;
+
+        // The schedule only needs the two temporaries of this level and the quadrants of c.
+        subtract(a11, a21, x, h);       // S3 = A11 - A21
+        subtract(b22, b12, y, h);       // T3 = B22 - B12
+        multiply(x, y, c21, h, next);   // P7 = S3 * T3
+        add(a21, a22, x, h);            // S1 = A21 + A22
+        subtract(b12, b11, y, h);       // T1 = B12 - B11
+        multiply(x, y, c22, h, next);   // P5 = S1 * T1
+        subtract(x, a11, x, h);         // S2 = S1 - A11
+        subtract(b22, y, y, h);         // T2 = B22 - T1
+        multiply(x, y, c12, h, next);   // P6 = S2 * T2
+        subtract(a12, x, x, h);         // S4 = A12 - S2
+        multiply(x, b22, c11, h, next); // P3 = S4 * B22
+        multiply(a11, b11, x, h, next); // P1 = A11 * B11
+        add(x, c12, c12, h);            // U2 = P1 + P6
+        add(c12, c21, c21, h);          // U3 = U2 + P7
+        add(c12, c22, c12, h);          // U4 = U2 + P5
+        add(c21, c22, c22, h);          // C22 = U3 + P5
+        add(c12, c11, c12, h);          // C12 = U4 + P3
+        subtract(y, b21, y, h);         // T4 = T2 - B21
+        multiply(a22, y, c11, h, next); // P4 = A22 * T4
+        subtract(c21, c11, c21, h);     // C21 = U3 - P4
+        multiply(a12, b21, c11, h, next); // P2 = A12 * B21
+        add(x, c11, c11, h);            // C11 = P1 + P2
+    }
+
+    /** Sets c to a * b with the classical i-k-j loops, skipping zeros of a. */
+    private static void classical(Block a, Block b, Block c, int n) {
+        int[] av = a.values, bv = b.values, cv = c.values;
+        for (int i = 0; i < n; i++) {
+            int ci = c.offset + i * c.stride;
+            for (int j = 0; j < n; j++) cv[ci + j] = 0;
+
+            int ai = a.offset + i * a.stride;
+            for (int k = 0; k < n; k++) {
+                int aik = av[ai + k];
+                if (aik == 0) continue;
+
+                int bk = b.offset + k * b.stride;
+                for (int j = 0; j < n; j++)
+                    cv[ci + j] += aik * bv[bk + j];
+            }
+        }
+    }
+
+    /** Sets result to x + y. The result may be one of the operands. */
+    private static void add(Block x, Block y, Block result, int n) {
+        for (int i = 0; i < n; i++) {
+            int xi = x.offset + i * x.stride, yi = y.offset + i * y.stride, ri = result.offset + i * result.stride;
+            for (int j = 0; j < n; j++)
+                result.values[ri + j] = x.values[xi + j] + y.values[yi + j];
+        }
+    }
+
+    /** Sets result to x - y. The result may be one of the operands. */
+    private static void subtract(Block x, Block y, Block result, int n) {
+        for (int i = 0; i < n; i++) {
+            int xi = x.offset + i * x.stride, yi = y.offset + i * y.stride, ri = result.offset + i * result.stride;
+            for (int j = 0; j < n; j++)
+                result.values[ri + j] = x.values[xi + j] - y.values[yi + j];
+        }
+    }
+}
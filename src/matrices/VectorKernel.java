@@ -0,0 +1,52 @@
+package matrices;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The i-k-j multiplication written with the Java Vector API.
+ * For every non-zero a[i][k], row k of b is scaled by a[i][k] (broadcast to all lanes)
+ * and added to row i of the result, one vector of columns at a time.
+ * <p>
+ * The Vector API is an incubator module in this JDK, so both javac and java need
+ * {@code --add-modules jdk.incubator.vector}. Without it, this class cannot be loaded and
+ * {@link IntMatrix#vectorMultiplication(IntMatrix, IntMatrix)} uses the scalar kernel instead.
+ */
+final class VectorKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private VectorKernel() {
+    }
+
+    /** Whether the preferred species holds more than one lane, so that vectors are worth using. */
+    static boolean isSupported() {
+        return SPECIES.length() > 1;
+    }
+
+    /** Adds a * b to c, where all three are row-major with the given dimension. */
+    static void multiply(int[] a, int[] b, int[] c, int dim) {
+        int lanes = SPECIES.length();
+        int vectorEnd = SPECIES.loopBound(dim);
+        for (int i = 0; i < dim; i++) {
+            int ci = i * dim;
+            for (int k = 0; k < dim; k++) {
+                int aik = a[ci + k];
+                // Skip zeros.
+                if (aik == 0) continue;
+
+                IntVector broadcast = IntVector.broadcast(SPECIES, aik);
+                int bk = k * dim;
+                int j = 0;
+                for (; j < vectorEnd; j += lanes) {
+                    IntVector row = IntVector.fromArray(SPECIES, b, bk + j);
+                    IntVector sum = IntVector.fromArray(SPECIES, c, ci + j);
+                    row.mul(broadcast).add(sum).intoArray(c, ci + j);
+                }
+                // The columns that do not fill a whole vector.
+                for (; j < dim; j++)
+                    c[ci + j] += aik * b[bk + j];
+            }
+        }
+    }
+}
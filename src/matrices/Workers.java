@@ -0,0 +1,83 @@
+package matrices;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the parallel multiplication kernels.
+ * One {@link ForkJoinPool} is kept for every parallelism level that has been asked for,
+ * so that sweeping over thread counts does not start new threads for every run.
+ */
+final class Workers {
+
+    /** The work done for a range of indexes [from, to). */
+    interface RangeBody {
+        void run(int from, int to);
+    }
+
+    private static final Map<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+    private Workers() {
+    }
+
+    /** Returns the number of threads to use when the caller does not specify one. */
+    static int defaultParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Returns the pool with the given number of worker threads. */
+    static ForkJoinPool pool(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        return pools.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+
+    /**
+     * Runs the body over [from, to) using the given number of threads.
+     * The range is split in halves until a part has at most grain indexes.
+     * Idle threads steal the halves that have not been started yet.
+     *
+     * @param parallelism the number of threads to use
+     * @param from        the first index (inclusive)
+     * @param to          the last index (exclusive)
+     * @param grain       the largest range that is not split any further
+     * @param body        the work to do for each part
+     */
+    static void parallelFor(int parallelism, int from, int to, int grain, RangeBody body) {
+        if (to <= from) return;
+        if (parallelism == 1 || to - from <= grain) {
+            body.run(from, to);
+            return;
+        }
+        pool(parallelism).invoke(new RangeTask(from, to, Math.max(1, grain), body));
+    }
+
+    private static class RangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final RangeBody body;
+
+        RangeTask(int from, int to, int grain, RangeBody body) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                body.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, grain, body), new RangeTask(middle, to, grain, body));
+        }
+    }
+}
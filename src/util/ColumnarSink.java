@@ -0,0 +1,128 @@
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the data points in a compact binary format, column by column in blocks of rows.
+ * Nothing is formatted as text, and a block of values of one column can be read as a single array.
+ * <p>
+ * Everything is big-endian, as written by {@link DataOutputStream}. The file starts with:
+ * <pre>
+ * int    magic (0x44504342, "DPCB")
+ * int    number of series columns s
+ * UTF    s series labels, then the x label
+ * </pre>
+ * followed by blocks until the end of the file:
+ * <pre>
+ * int     number of rows n
+ * s times: int dictionary size d, UTF d distinct values, int[n] indices into the dictionary
+ * int[n]  x-values
+ * double[n] for each of the first 8 {@link ResultSink#VALUE_COLUMNS} (mean to ci high)
+ * long[n] runs
+ * double[n] for each of allocated bytes, gc count and gc time
+ * </pre>
+ * A block is written when it is full, or earlier when the sink is flushed.
+ */
+public class ColumnarSink implements ResultSink {
+
+    static final int MAGIC = 0x44504342;
+    private static final int BLOCK_ROWS = 4096;
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** The number of double columns before the runs column, and after it. */
+    private static final int LEADING_DOUBLES = 8;
+    private static final int TRAILING_DOUBLES = 3;
+
+    private final DataOutputStream out;
+    private Object[][] series;
+    private final int[] x = new int[BLOCK_ROWS];
+    private final double[][] doubles = new double[LEADING_DOUBLES + TRAILING_DOUBLES][BLOCK_ROWS];
+    private final long[] runs = new long[BLOCK_ROWS];
+    private int rows = 0;
+
+    public ColumnarSink(String filename) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), BUFFER_SIZE));
+    }
+
+    @Override
+    public void writeHeader(String[] seriesLabels, String xLabel) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(seriesLabels.length);
+        for (String label : seriesLabels)
+            out.writeUTF(label);
+        out.writeUTF(xLabel);
+        series = new Object[seriesLabels.length][BLOCK_ROWS];
+    }
+
+    @Override
+    public void writeRow(Object[] series, int x, double ratio, Statistics dp) throws IOException {
+        for (int column = 0; column < series.length; column++)
+            this.series[column][rows] = series[column];
+        this.x[rows] = x;
+        doubles[0][rows] = dp.mean;
+        doubles[1][rows] = ratio;
+        doubles[2][rows] = dp.median;
+        doubles[3][rows] = dp.p90;
+        doubles[4][rows] = dp.p99;
+        doubles[5][rows] = dp.standardDeviation;
+        doubles[6][rows] = dp.confidenceLow;
+        doubles[7][rows] = dp.confidenceHigh;
+        runs[rows] = dp.runs;
+        doubles[8][rows] = dp.allocatedBytes;
+        doubles[9][rows] = dp.collections;
+        doubles[10][rows] = dp.pauseMillis;
+        if (++rows == BLOCK_ROWS) writeBlock();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeBlock();
+        out.close();
+    }
+
+    /** Writes the buffered rows as one block. */
+    private void writeBlock() throws IOException {
+        if (rows == 0) return;
+        out.writeInt(rows);
+        for (Object[] column : series)
+            writeDictionary(column);
+        for (int i = 0; i < rows; i++) out.writeInt(x[i]);
+        for (int column = 0; column < LEADING_DOUBLES; column++)
+            for (int i = 0; i < rows; i++) out.writeDouble(doubles[column][i]);
+        for (int i = 0; i < rows; i++) out.writeLong(runs[i]);
+        for (int column = LEADING_DOUBLES; column < LEADING_DOUBLES + TRAILING_DOUBLES; column++)
+            for (int i = 0; i < rows; i++) out.writeDouble(doubles[column][i]);
+        rows = 0;
+    }
+
+    /** Writes a series column as its distinct values followed by the index of the value of each row. */
+    private void writeDictionary(Object[] column) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        int[] indices = new int[rows];
+        String[] values = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            String value = String.valueOf(column[i]);
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                index = dictionary.size();
+                dictionary.put(value, index);
+                values[index] = value;
+            }
+            indices[i] = index;
+            column[i] = null;
+        }
+        out.writeInt(dictionary.size());
+        for (int i = 0; i < dictionary.size(); i++) out.writeUTF(values[i]);
+        for (int index : indices) out.writeInt(index);
+    }
+}
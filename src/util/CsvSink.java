@@ -0,0 +1,107 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static util.CommonlyUsed.NEW_LINE;
+import static util.CommonlyUsed.SEPARATOR;
+
+/**
+ * Writes the data points as comma separated values, one data point per line, after a line of column names.
+ * The times are written with 5 decimals and the ratio with 2, as the analysis expects.
+ * The numbers are formatted by hand instead of with {@link String#format}, which is slow enough
+ * to matter when millions of data points are written.
+ */
+public class CsvSink implements ResultSink {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Below this, a scaled value fits in a long with room to spare. */
+    private static final double EXACT_LIMIT = 1e14;
+    /**
+     * How close, in ulps of the scaled value, a scaled value must be to a half for it to be rounded as a decimal.
+     * The scaled value differs from the scaled shortest decimal of the double by at most about two ulps.
+     */
+    private static final int TIE_ULPS = 4;
+
+    private final BufferedWriter writer;
+    private final StringBuilder row = new StringBuilder();
+
+    public CsvSink(String filename) throws IOException {
+        writer = new BufferedWriter(new FileWriter(filename), BUFFER_SIZE);
+    }
+
+    @Override
+    public void writeHeader(String[] seriesLabels, String xLabel) throws IOException {
+        row.setLength(0);
+        for (String label : seriesLabels)
+            row.append(label).append(SEPARATOR);
+        row.append(xLabel);
+        for (String column : VALUE_COLUMNS)
+            row.append(SEPARATOR).append(column);
+        writer.append(row).append(NEW_LINE);
+    }
+
+    @Override
+    public void writeRow(Object[] series, int x, double ratio, Statistics dp) throws IOException {
+        row.setLength(0);
+        for (Object value : series)
+            row.append(value).append(SEPARATOR);
+        row.append(x);
+        appendFixed(row.append(SEPARATOR), dp.mean, 5);
+        appendFixed(row.append(SEPARATOR), ratio, 2);
+        appendFixed(row.append(SEPARATOR), dp.median, 5);
+        appendFixed(row.append(SEPARATOR), dp.p90, 5);
+        appendFixed(row.append(SEPARATOR), dp.p99, 5);
+        appendFixed(row.append(SEPARATOR), dp.standardDeviation, 5);
+        appendFixed(row.append(SEPARATOR), dp.confidenceLow, 5);
+        appendFixed(row.append(SEPARATOR), dp.confidenceHigh, 5);
+        row.append(SEPARATOR).append(dp.runs);
+        appendFixed(row.append(SEPARATOR), dp.allocatedBytes, 0);
+        appendFixed(row.append(SEPARATOR), dp.collections, 2);
+        appendFixed(row.append(SEPARATOR), dp.pauseMillis, 2);
+        writer.append(row).append(NEW_LINE);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Appends the value with the given number of decimals, giving the same digits as {@link String#format}.
+     * That rounds the shortest decimal that stands for the double (the one of {@link Double#toString}) half up,
+     * and not the binary value itself, so 1.005 gives 1.01 although the double is a little below 1.005.
+     * The two only differ when the scaled value is within a few ulps of a half; only those values are rounded
+     * through {@link BigDecimal}. Values too large to be scaled into a long are appended with String.format.
+     */
+    static void appendFixed(StringBuilder sb, double value, int decimals) {
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) scale *= 10;
+        double magnitude = Math.abs(value) * scale;
+        if (Double.isNaN(value) || Double.isInfinite(value) || magnitude >= EXACT_LIMIT) {
+            sb.append(String.format("%." + decimals + "f", value));
+            return;
+        }
+        double fraction = magnitude - Math.floor(magnitude);
+        if (Math.abs(fraction - 0.5) <= TIE_ULPS * Math.ulp(magnitude)) {
+            sb.append(BigDecimal.valueOf(value).setScale(decimals, RoundingMode.HALF_UP).toPlainString());
+            return;
+        }
+        long scaled = Math.round(magnitude);
+        if (Math.copySign(1.0, value) < 0) sb.append('-');
+        sb.append(scaled / scale);
+        if (decimals == 0) return;
+        sb.append('.');
+        String digits = Long.toString(scaled % scale);
+        for (int i = digits.length(); i < decimals; i++) sb.append('0');
+        sb.append(digits);
+    }
+}
@@ -1,86 +1,181 @@
 package util;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-import static util.CommonlyUsed.NEW_LINE;
 import static util.CommonlyUsed.SEPARATOR;
 import static util.Logger.log;
 
 /**
- * This class writes the data to a file.
- * A static field saves the value of the first data point for comparison purposes.
+ * This class writes the data to one or more {@link ResultSink}s.
+ * The value of the first data point is saved for comparison purposes.
+ * Each data point is the mean time followed by the rest of its {@link Statistics}.
+ * <p>
+ * A file may hold several series of data points, told apart by leading series columns
+ * (such as the method and the density). Each series is compared to its own first data point.
+ * All methods are synchronized, so several threads may write to the same file.
+ * <p>
+ * The rows are batched: the sinks are flushed every {@link DataWriter#FLUSH_ROWS} rows,
+ * or on the first row written a second or more after the last flush, and when the writer is closed.
  *
  * @version 1.0
  */
 public class DataWriter {
 
-    private static final String HEADER = "matrix size" + SEPARATOR + "time to multiply" + SEPARATOR + "compared to first" + NEW_LINE;
+    private static final String DEFAULT_X_LABEL = "matrix size";
 
-    private static BufferedWriter writer;
+    /** Separates the names of the files when a data set is written to several files at once. */
+    private static final String FILE_SEPARATOR = ",";
+    private static final int FLUSH_ROWS = 1024;
+    private static final long FLUSH_PERIOD = 1_000_000_000L;//ns
+
+    private final List<ResultSink> sinks = new ArrayList<>();
+    private final String xLabel;
+    private final String[] seriesLabels;
+    private boolean headerWritten = false;
+    private int unflushedRows = 0;
+    private long lastFlush = System.nanoTime();
     /**
-     * Saves the value of the first data point.
-     * If this is not null, then there has a been a data point already.
+     * Saves the value of the first data point of each series.
+     * If a series has no entry, then there has not been a data point in it yet.
      * Its value is used to explain the relations of the data points.
      */
-    private static Double firstDP = null;
+    private final Map<String, Double> firstDPs = new HashMap<>();
 
-    public static void open(String filename) {
-        try {
-            writer = new BufferedWriter(new FileWriter(filename));
-        }
-        catch (IOException e) {
-            log(e);
-        }
+    /** Opens the file for data points that change with the matrix size. */
+    public DataWriter(String filename) {
+        this(filename, DEFAULT_X_LABEL);
     }
 
     /**
-     * Writes the header and
-     * calls {@link DataWriter#writeDP(double, int)} to write the first data point to the file.
+     * Opens the files and names their columns.
+     * Several files may be given, separated by commas; the format of each is chosen by its extension:
+     * .jsonl for {@link JsonLinesSink}, .bin for {@link ColumnarSink} and anything else for {@link CsvSink}.
      *
-     * @param dp   the data point to write
-     * @param size the size of the matrix for this data point
-     * @see DataWriter#writeDP(double, int)
+     * @param filename     the file (or files) to write to
+     * @param xLabel       the name of the value that changes between data points, such as "threads"
+     * @param seriesLabels the names of the columns that tell the series apart, if there are several
      */
-    public static void writeFirstDP(double dp, int size) {
-        firstDP = dp;
-        try {
-            writer.write(HEADER);
-            writer.flush();
-        }
-        catch (IOException e) {
-            log(e);
+    public DataWriter(String filename, String xLabel, String... seriesLabels) {
+        this(xLabel, seriesLabels);
+        for (String file : filename.split(FILE_SEPARATOR)) {
+            try {
+                sinks.add(sinkFor(file.trim()));
+            }
+            catch (IOException e) {
+                log(e);
+            }
         }
+    }
+
+    /**
+     * Writes to the given sinks and names their columns.
+     *
+     * @param xLabel       the name of the value that changes between data points, such as "threads"
+     * @param seriesLabels the names of the columns that tell the series apart
+     * @param sinks        the sinks to write every data point to
+     */
+    public DataWriter(String xLabel, String[] seriesLabels, ResultSink... sinks) {
+        this(xLabel, seriesLabels);
+        this.sinks.addAll(List.of(sinks));
+    }
+
+    private DataWriter(String xLabel, String[] seriesLabels) {
+        this.xLabel = xLabel;
+        this.seriesLabels = seriesLabels.clone();
+    }
 
-        writeDP(dp, size);
+    /** Opens a sink for the file, in the format given by its extension. */
+    private static ResultSink sinkFor(String filename) throws IOException {
+        if (filename.endsWith(".jsonl")) return new JsonLinesSink(filename);
+        if (filename.endsWith(".bin")) return new ColumnarSink(filename);
+        return new CsvSink(filename);
     }
 
     /**
-     * Writes a single data point to the file.
-     * The format is: matrix size,data point,ration between this data point and first data point.
+     * Writes the header (if this is the first series) and
+     * calls {@link DataWriter#writeDP(Statistics, int, Object...)} to write the first data point of a series to the file.
      *
-     * @param dp   the data point to write
-     * @param size the size of the matrix for this data point
-     * @see DataWriter#firstDP
+     * @param dp     the data point to write
+     * @param size   the size of the matrix for this data point
+     * @param series the values of the series columns
+     * @see DataWriter#writeDP(Statistics, int, Object...)
      */
-    public static synchronized void writeDP(double dp, int size) {
-        String formatted = String.format("%d%s%.5f%s%.2f%s", size, SEPARATOR, dp, SEPARATOR, dp / firstDP, NEW_LINE);
-        try {
-            writer.write(formatted);
-            writer.flush();
+    public synchronized void writeFirstDP(Statistics dp, int size, Object... series) {
+        firstDPs.put(seriesKey(series), dp.mean);
+        if (!headerWritten) {
+            for (ResultSink sink : sinks) {
+                try {
+                    sink.writeHeader(seriesLabels, xLabel);
+                }
+                catch (IOException e) {
+                    log(e);
+                }
+            }
+            headerWritten = true;
         }
-        catch (IOException e) {
-            log(e);
+
+        writeDP(dp, size, series);
+    }
+
+    /**
+     * Writes a single data point to every sink.
+     * The values are: [series values,]matrix size,data point,ration between this data point and first data point,
+     * median,p90,p99,standard deviation,confidence interval low,confidence interval high,number of runs,
+     * allocated bytes,garbage collections,garbage collection time (the last three averaged over the runs).
+     *
+     * @param dp     the data point to write
+     * @param size   the size of the matrix for this data point
+     * @param series the values of the series columns
+     * @see DataWriter#firstDPs
+     */
+    public synchronized void writeDP(Statistics dp, int size, Object... series) {
+        double firstDP = firstDPs.get(seriesKey(series));
+        for (ResultSink sink : sinks) {
+            try {
+                sink.writeRow(series, size, dp.mean / firstDP, dp);
+            }
+            catch (IOException e) {
+                log(e);
+            }
         }
+        unflushedRows++;
+        if (unflushedRows >= FLUSH_ROWS || System.nanoTime() - lastFlush >= FLUSH_PERIOD) flush();
     }
 
-    public static void close() {
-        try {
-            writer.close();
+    /** Makes sure every data point written so far has reached the files. */
+    public synchronized void flush() {
+        for (ResultSink sink : sinks) {
+            try {
+                sink.flush();
+            }
+            catch (IOException e) {
+                log(e);
+            }
         }
-        catch (IOException e) {
-            log(e);
+        unflushedRows = 0;
+        lastFlush = System.nanoTime();
+    }
+
+    public synchronized void close() {
+        for (ResultSink sink : sinks) {
+            try {
+                sink.close();
+            }
+            catch (IOException e) {
+                log(e);
+            }
         }
     }
+
+    /** Returns the series columns as a key of {@link DataWriter#firstDPs}. */
+    private static String seriesKey(Object... series) {
+        StringBuilder sb = new StringBuilder();
+        for (Object value : series)
+            sb.append(value).append(SEPARATOR);
+        return sb.toString();
+    }
 }
@@ -0,0 +1,100 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Writes every data point as a JSON object on a line of its own (JSON Lines).
+ * The keys are the names of the columns, for example:
+ * <pre>
+ * {"method":"BM","matrix size":100,"time to multiply":1234.5,"compared to first":1.0,...}
+ * </pre>
+ * Numeric series values are written as numbers, all others as strings.
+ * Values that JSON cannot hold (NaN and infinities) are written as null.
+ */
+public class JsonLinesSink implements ResultSink {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final BufferedWriter writer;
+    private final StringBuilder row = new StringBuilder();
+    private String[] seriesKeys;
+    private String xKey;
+    private String[] valueKeys;
+
+    public JsonLinesSink(String filename) throws IOException {
+        writer = new BufferedWriter(new FileWriter(filename), BUFFER_SIZE);
+    }
+
+    /** JSON Lines has no header, so the names are only kept as keys. */
+    @Override
+    public void writeHeader(String[] seriesLabels, String xLabel) {
+        seriesKeys = new String[seriesLabels.length];
+        for (int i = 0; i < seriesLabels.length; i++)
+            seriesKeys[i] = quote(seriesLabels[i]) + ":";
+        xKey = quote(xLabel) + ":";
+        valueKeys = new String[VALUE_COLUMNS.length];
+        for (int i = 0; i < VALUE_COLUMNS.length; i++)
+            valueKeys[i] = "," + quote(VALUE_COLUMNS[i]) + ":";
+    }
+
+    @Override
+    public void writeRow(Object[] series, int x, double ratio, Statistics dp) throws IOException {
+        row.setLength(0);
+        row.append('{');
+        for (int i = 0; i < series.length; i++) {
+            row.append(seriesKeys[i]);
+            if (series[i] instanceof Number) appendNumber(((Number) series[i]).doubleValue());
+            else row.append(quote(String.valueOf(series[i])));
+            row.append(',');
+        }
+        row.append(xKey).append(x);
+        appendNumber(valueKeys[0], dp.mean);
+        appendNumber(valueKeys[1], ratio);
+        appendNumber(valueKeys[2], dp.median);
+        appendNumber(valueKeys[3], dp.p90);
+        appendNumber(valueKeys[4], dp.p99);
+        appendNumber(valueKeys[5], dp.standardDeviation);
+        appendNumber(valueKeys[6], dp.confidenceLow);
+        appendNumber(valueKeys[7], dp.confidenceHigh);
+        row.append(valueKeys[8]).append(dp.runs);
+        appendNumber(valueKeys[9], dp.allocatedBytes);
+        appendNumber(valueKeys[10], dp.collections);
+        appendNumber(valueKeys[11], dp.pauseMillis);
+        row.append('}');
+        writer.append(row).append('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void appendNumber(String key, double value) {
+        row.append(key);
+        appendNumber(value);
+    }
+
+    private void appendNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) row.append("null");
+        else if (value == (long) value) row.append((long) value);
+        else row.append(value);
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < ' ') sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -3,45 +3,115 @@ package util;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 import static util.CommonlyUsed.NEW_LINE;
-import static util.CommonlyUsed.print;
 
+/**
+ * Writes the log in the background.
+ * A call to log only puts the line in a bounded ring buffer, which costs a compare-and-set and
+ * the count of the callers that are putting lines in when the buffer has room, so that kernels may log from
+ * their worker threads.
+ * A single writer thread takes the lines out of the buffer in batches, writes them and flushes the file
+ * whenever the buffer runs empty. It then sleeps until a caller puts a line in the empty buffer and wakes it,
+ * so an idle log costs nothing during a timed run.
+ * Closing the logger waits until the callers that are putting lines in are done and every line in the buffer
+ * has been written. Lines logged after that go to System.err.
+ * <p>
+ * When the buffer is full, the {@link Policy} decides whether the caller waits for room or the line is dropped.
+ * The number of dropped lines is written at the end of the log.
+ */
 public class Logger {
 
-    private static final int FLUSH_PERIOD = 5000;//ms
+    /** What to do with a line when the buffer is full. */
+    public enum Policy {
+        /** Wait until the writer has made room. No line is lost, but a caller may stall. */
+        BLOCK,
+        /** Drop the line and count it. A caller never waits. */
+        DROP
+    }
+
+    private static final int DEFAULT_CAPACITY = 1 << 14;
+    /** The most lines written before the writer looks at the buffer again. */
+    private static final int BATCH_SIZE = 256;
 
+    private static volatile RingBuffer buffer;
+    private static volatile boolean running;
+    /** Set by the writer before it sleeps on an empty buffer, so that the next caller wakes it. */
+    private static volatile boolean idle;
+    private static Policy policy;
     private static BufferedWriter writer;
+    private static volatile Thread writerThread;
+    /** The callers waiting for room in a full buffer, woken by the writer after every batch. */
+    private static final ConcurrentLinkedQueue<Thread> blocked = new ConcurrentLinkedQueue<>();
+    private static final AtomicLong dropped = new AtomicLong();
 
-    /**
-     * Used to control the flushing thread.
-     *
-     * @see Logger#periodicFlush()
-     */
-    private static boolean contentsUpdated = false;
+    /** Opens the log with a buffer of the default capacity that blocks when full. */
+    public static void open(String filename) {
+        open(filename, DEFAULT_CAPACITY, Policy.BLOCK);
+    }
 
     /**
-     * Used to control the flushing thread.
+     * Opens the log and starts its writer thread.
      *
-     * @see Logger#periodicFlush()
+     * @param filename the file to write to
+     * @param capacity the number of lines the buffer holds, rounded up to a power of two and at least two
+     * @param policy   what to do with a line when the buffer is full
      */
-    private static boolean running;
-
-    public static void open(String filename) {
+    public static void open(String filename, int capacity, Policy policy) {
         try {
             writer = new BufferedWriter(new FileWriter(filename));
-            running = true;
-            new Thread(Logger::periodicFlush).start();
         }
         catch (IOException e) {
             e.printStackTrace();
+            return;
         }
+        Logger.policy = policy;
+        dropped.set(0);
+        buffer = new RingBuffer(capacity);
+        running = true;
+        idle = false;
+        writerThread = new Thread(Logger::drain, "logger");
+        writerThread.setDaemon(true);
+        writerThread.start();
     }
 
+    /** Stops taking lines, waits until the writer has written the ones in the buffer and closes the file. */
     public static void close() {
+        Thread thread = writerThread;
+        if (thread == null) return;
+        // Lines logged from now on go to System.err, like lines logged before the log was opened.
+        RingBuffer b = buffer;
+        buffer = null;
+        running = false;
+        LockSupport.unpark(thread);
+        blocked.forEach(LockSupport::unpark);
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+
+        // A caller that took the buffer just before it was set to null may still put its line in after the writer
+        // last found the buffer empty. Such a caller counted itself before it saw that the buffer was still open,
+        // so once the count is zero no line can come any more. Callers that come later see the closed buffer.
+        while (b.producers.get() > 0)
+            Thread.yield();
+        // The writer is gone, so this thread is now the only consumer.
         try {
+            String line;
+            while ((line = b.poll()) != null) {
+                writer.write(line);
+                writer.write(NEW_LINE);
+            }
+            if (dropped.get() > 0) writer.write(dropped.get() + " log lines were dropped." + NEW_LINE);
             writer.close();
-            running = false;
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -49,43 +119,161 @@ public class Logger {
     }
 
     public static void log(String line) {
+        RingBuffer b = buffer;
+        if (b != null) {
+            // Count this caller before looking at the buffer again: either close sees the count and waits for it,
+            // or this caller sees that the buffer was closed in the meantime.
+            b.producers.incrementAndGet();
+            try {
+                if (buffer == b && put(b, line)) return;
+            }
+            finally {
+                b.producers.decrementAndGet();
+            }
+        }
+        // The log is not open, so there is nowhere else to put the line.
+        System.err.println(line);
+    }
+
+    /**
+     * Puts the line in the buffer, or waits for room or drops it, as the policy says.
+     * Returns false if the logger was closed while waiting, so that the line is not lost.
+     */
+    private static boolean put(RingBuffer b, String line) {
+        if (b.offer(line)) {
+            if (idle) LockSupport.unpark(writerThread);
+            return true;
+        }
+        if (policy == Policy.DROP) {
+            dropped.incrementAndGet();
+            return true;
+        }
+        // Wait for the writer to make room. Being in the queue before trying again means that the writer,
+        // which empties slots before it wakes the queue, either wakes this thread or has already made room.
+        Thread current = Thread.currentThread();
+        blocked.add(current);
         try {
-            writer.write(line + NEW_LINE);
-            contentsUpdated = true;
+            while (!b.offer(line)) {
+                if (!running) return false;
+                LockSupport.unpark(writerThread);
+                LockSupport.park(Logger.class);
+            }
         }
-        catch (IOException e) {
-            e.printStackTrace();
+        finally {
+            blocked.remove(current);
         }
+        if (idle) LockSupport.unpark(writerThread);
+        return true;
     }
 
+    /** Logs the exception and its stack trace as a single entry, so that it is not interleaved with other lines. */
     public static void log(Exception e) {
-        log(e.toString());
-        StackTraceElement[] stack = e.getStackTrace();
-        for (StackTraceElement element : stack)
-            log("\t" + element.toString());
+        StringBuilder sb = new StringBuilder(e.toString());
+        for (StackTraceElement element : e.getStackTrace())
+            sb.append(NEW_LINE).append("\t").append(element);
+        log(sb.toString());
     }
 
     /**
-     * Periodically flushes the log.
-     * In case the program crashes before the writer was properly closed,
-     * there might be some log to read.
+     * The body of the writer thread.
+     * Writes the lines in batches and flushes the file whenever the buffer runs empty,
+     * so that there is some log to read if the program crashes before the logger is closed.
+     * After the logger is closed, it writes what is left in the buffer; closing the file is left to
+     * {@link Logger#close()}.
      */
-    private static void periodicFlush() {
-        while (running) {
-            try {
-                Thread.sleep(FLUSH_PERIOD);
-            }
-            catch (InterruptedException ignored) {
+    private static void drain() {
+        RingBuffer b = buffer;
+        try {
+            boolean unflushed = false;
+            while (true) {
+                boolean stopping = !running;
+                int written = 0;
+                String line;
+                while (written < BATCH_SIZE && (line = b.poll()) != null) {
+                    writer.write(line);
+                    writer.write(NEW_LINE);
+                    written++;
+                }
+                if (written > 0) {
+                    unflushed = true;
+                    if (!blocked.isEmpty()) blocked.forEach(LockSupport::unpark);
+                    continue;
+                }
+                if (stopping) break;
+                if (unflushed) {
+                    writer.flush();
+                    unflushed = false;
+                }
+                // Announce the sleep before looking at the buffer once more: a caller that puts a line in after
+                // that look sees the flag and wakes the writer; a line put in before it is found by the look.
+                idle = true;
+                if (running && b.isEmpty()) LockSupport.park(Logger.class);
+                idle = false;
             }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-            if (!contentsUpdated) continue;
-            try {
-                writer.flush();
-            }
-            catch (IOException e) {
-                print("Could not flush log.");
+    /**
+     * A bounded ring buffer for many producers and a single consumer.
+     * Every slot has a sequence number that tells whose turn it is: a producer may fill the slot for
+     * position p when its sequence is p, and the consumer may empty it when its sequence is p + 1.
+     * Producers claim positions with a compare-and-set on the tail; the consumer owns the head.
+     * It has at least two slots: with one, an emptied slot and a filled one would have the same sequence.
+     */
+    private static class RingBuffer {
+
+        private final String[] lines;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private long head = 0;
+        /** The callers that may still put a line in, which closing waits for. */
+        final AtomicInteger producers = new AtomicInteger();
+
+        RingBuffer(int capacity) {
+            int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+            lines = new String[size];
+            sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) sequences.set(i, i);
+            mask = size - 1;
+        }
+
+        /** Puts the line in the buffer, or returns false if the buffer is full. */
+        boolean offer(String line) {
+            long position = tail.get();
+            while (true) {
+                int slot = (int) position & mask;
+                long difference = sequences.get(slot) - position;
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        lines[slot] = line;
+                        sequences.set(slot, position + 1);
+                        return true;
+                    }
+                    position = tail.get();
+                }
+                else if (difference < 0) return false;
+                else position = tail.get();
             }
-            contentsUpdated = false;
+        }
+
+        /** Returns whether there is no line to take out of the buffer. Only for the consumer. */
+        boolean isEmpty() {
+            return sequences.get((int) head & mask) != head + 1;
+        }
+
+        /** Takes the oldest line out of the buffer, or returns null if there is none. Only for the consumer. */
+        String poll() {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) return null;
+            String line = lines[slot];
+            lines[slot] = null;
+            sequences.set(slot, head + lines.length);
+            head++;
+            return line;
         }
     }
 }
@@ -0,0 +1,147 @@
+package util;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static util.Logger.log;
+
+/**
+ * Measures a timed window: the time it took, the bytes allocated in it and the garbage collections that ran in it.
+ * The counters are read outside of the timed part, so reading them is not included in the time.
+ * <p>
+ * The allocated bytes are summed over all the threads of the JVM, as the parallel kernels allocate
+ * in the threads of their pools. Threads that end inside the window are not counted, and reading
+ * the counters of the threads itself allocates a few kilobytes that are counted.
+ * <p>
+ * Usage:
+ * <pre>
+ * Measurement m = Measurement.start();
+ * multiply(a, b);
+ * return m.stop();
+ * </pre>
+ */
+public class Measurement {
+
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** How long to wait between checks of whether the garbage collector has gone quiet. */
+    private static final int QUIESCENCE_INTERVAL = 20;//ms
+    private static final int MAX_QUIESCENCE_CHECKS = 50;
+
+    /** If set, a garbage collection is forced, and waited for, before each measurement starts. */
+    private static boolean forceGc = false;
+
+    /** The live threads when the window started, sorted, and the bytes each of them had allocated. */
+    private long[] startThreads;
+    private long[] startBytes;
+    private long startCollections;
+    private long startPause;
+    private long startTime;
+
+    /** The time the window took, in nanoseconds. */
+    public long time;
+    /** The bytes allocated in the window. */
+    public long allocatedBytes;
+    /** The number of garbage collections that ran in the window. */
+    public long collections;
+    /** The time the garbage collections in the window took, in milliseconds. */
+    public long pauseMillis;
+
+    private Measurement() {
+    }
+
+    /** Sets whether a garbage collection is forced before each measurement. */
+    public static void setForceGc(boolean force) {
+        forceGc = force;
+    }
+
+    /** Returns an empty measurement, for runs that did not measure anything. */
+    public static Measurement none() {
+        return new Measurement();
+    }
+
+    /** Starts a measurement, forcing a garbage collection first if that has been set. */
+    public static Measurement start() {
+        if (forceGc) quiesce();
+        Measurement m = new Measurement();
+        m.startThreads = THREADS.getAllThreadIds();
+        Arrays.sort(m.startThreads);
+        m.startBytes = threadAllocatedBytes(m.startThreads);
+        m.startCollections = collections();
+        m.startPause = pauseMillis();
+        m.startTime = System.nanoTime();
+        return m;
+    }
+
+    /**
+     * Ends the measurement.
+     *
+     * @return this measurement
+     */
+    public Measurement stop() {
+        time = System.nanoTime() - startTime;
+        long[] threads = THREADS.getAllThreadIds();
+        long[] bytes = threadAllocatedBytes(threads);
+        allocatedBytes = 0;
+        for (int i = 0; i < threads.length; i++) {
+            if (bytes[i] < 0) continue;
+            int started = Arrays.binarySearch(startThreads, threads[i]);
+            allocatedBytes += started >= 0 && startBytes[started] >= 0 ? bytes[i] - startBytes[started] : bytes[i];
+        }
+        collections = collections() - startCollections;
+        pauseMillis = pauseMillis() - startPause;
+        return this;
+    }
+
+    /**
+     * Forces a garbage collection and waits until no collection has run for a whole interval,
+     * so that a collection started by the garbage of the previous run does not fall into the next window.
+     */
+    private static void quiesce() {
+        System.gc();
+        long before = collections();
+        for (int i = 0; i < MAX_QUIESCENCE_CHECKS; i++) {
+            try {
+                Thread.sleep(QUIESCENCE_INTERVAL);
+            }
+            catch (InterruptedException e) {
+                log(e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long after = collections();
+            if (after == before) return;
+            before = after;
+        }
+    }
+
+    /**
+     * Returns the bytes allocated so far by each of the threads.
+     * A thread that has ended, or a JVM that does not count allocations, gives -1.
+     */
+    private static long[] threadAllocatedBytes(long[] threads) {
+        if (!THREADS.isThreadAllocatedMemorySupported() || !THREADS.isThreadAllocatedMemoryEnabled()) {
+            long[] unknown = new long[threads.length];
+            Arrays.fill(unknown, -1);
+            return unknown;
+        }
+        return THREADS.getThreadAllocatedBytes(threads);
+    }
+
+    private static long collections() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            total += Math.max(0, gc.getCollectionCount());
+        return total;
+    }
+
+    private static long pauseMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            total += Math.max(0, gc.getCollectionTime());
+        return total;
+    }
+}
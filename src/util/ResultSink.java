@@ -0,0 +1,46 @@
+package util;
+
+import java.io.IOException;
+
+/**
+ * A destination for the data points written by a {@link DataWriter}.
+ * A sink may buffer as much as it likes; it only has to reach its file when it is flushed or closed.
+ * Sinks are not thread safe, the {@link DataWriter} calls them from one thread at a time.
+ *
+ * @see CsvSink
+ * @see JsonLinesSink
+ * @see ColumnarSink
+ */
+public interface ResultSink {
+
+    /**
+     * The names of the values of a data point, in the order they are written after the series columns and the x-value.
+     * They match the fields of {@link Statistics}, with the ratio to the first data point of the series second.
+     */
+    String[] VALUE_COLUMNS = {"time to multiply", "compared to first", "median", "p90", "p99", "standard deviation",
+            "ci low", "ci high", "runs", "allocated bytes", "gc count", "gc time (ms)"};
+
+    /**
+     * Writes whatever the sink puts before the first data point. It is called once, before the first row.
+     *
+     * @param seriesLabels the names of the columns that tell the series apart
+     * @param xLabel       the name of the value that changes between data points
+     */
+    void writeHeader(String[] seriesLabels, String xLabel) throws IOException;
+
+    /**
+     * Writes a single data point.
+     *
+     * @param series the values of the series columns
+     * @param x      the x-value of the data point, such as the matrix size
+     * @param ratio  the ratio between the mean of this data point and the mean of the first one of its series
+     * @param dp     the data point
+     */
+    void writeRow(Object[] series, int x, double ratio, Statistics dp) throws IOException;
+
+    /** Makes sure the rows written so far reach the file. */
+    void flush() throws IOException;
+
+    /** Flushes and closes the file. */
+    void close() throws IOException;
+}
@@ -0,0 +1,132 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static util.CommonlyUsed.DEFAULT_SEED;
+
+/**
+ * Summarises the times measured for a single data point.
+ * Besides the mean, it keeps the median, the 90th and 99th percentiles, the standard deviation
+ * and a 95% bootstrap confidence interval of the mean, so that a single slow run
+ * (a garbage collection or a recompilation) shows up instead of silently moving the mean.
+ * Along with the times, it keeps the average allocation and garbage collection of a run,
+ * to tell how much of the time may have been spent collecting garbage.
+ */
+public class Statistics {
+
+    /** The number of resamples drawn to estimate the confidence interval. */
+    private static final int BOOTSTRAP_RESAMPLES = 1000;
+    private static final double CONFIDENCE = 0.95;
+
+    public final double mean;
+    public final double median;
+    public final double p90;
+    public final double p99;
+    public final double standardDeviation;
+    public final double confidenceLow;
+    public final double confidenceHigh;
+    public final long runs;
+    /** The average number of bytes allocated by a run. */
+    public final double allocatedBytes;
+    /** The average number of garbage collections during a run. */
+    public final double collections;
+    /** The average time (in milliseconds) the garbage collections took during a run. */
+    public final double pauseMillis;
+
+    public Statistics(double mean, double median, double p90, double p99, double standardDeviation,
+                      double confidenceLow, double confidenceHigh, long runs,
+                      double allocatedBytes, double collections, double pauseMillis) {
+        this.mean = mean;
+        this.median = median;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.standardDeviation = standardDeviation;
+        this.confidenceLow = confidenceLow;
+        this.confidenceHigh = confidenceHigh;
+        this.runs = runs;
+        this.allocatedBytes = allocatedBytes;
+        this.collections = collections;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * Computes the statistics of the first count measured runs.
+     *
+     * @param runs  the measured runs
+     * @param count the number of runs to use
+     */
+    public static Statistics of(Measurement[] runs, int count) {
+        if (count == 0) return new Statistics(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        long[] sorted = new long[count];
+        double allocatedBytes = 0, collections = 0, pauseMillis = 0;
+        for (int i = 0; i < count; i++) {
+            sorted[i] = runs[i].time;
+            allocatedBytes += runs[i].allocatedBytes;
+            collections += runs[i].collections;
+            pauseMillis += runs[i].pauseMillis;
+        }
+        Arrays.sort(sorted);
+
+        double sum = 0;
+        for (long sample : sorted) sum += sample;
+        double mean = sum / count;
+        double squares = 0;
+        for (long sample : sorted) squares += (sample - mean) * (sample - mean);
+        double standardDeviation = count > 1 ? Math.sqrt(squares / (count - 1)) : 0;
+
+        double[] interval = bootstrap(sorted);
+        return new Statistics(mean, percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                standardDeviation, interval[0], interval[1], count,
+                allocatedBytes / count, collections / count, pauseMillis / count);
+    }
+
+    /** Returns the nearest-rank percentile of sorted samples. */
+    private static double percentile(long[] sorted, double percent) {
+        int rank = (int) Math.ceil(percent / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Estimates the confidence interval of the mean by resampling the samples with replacement
+     * and taking the percentiles of the means of the resamples.
+     * The resamples are drawn with a fixed seed, so the same samples always give the same interval.
+     */
+    private static double[] bootstrap(long[] samples) {
+        int n = samples.length;
+        Random r = new Random(DEFAULT_SEED);
+        double[] means = new double[BOOTSTRAP_RESAMPLES];
+        for (int resample = 0; resample < BOOTSTRAP_RESAMPLES; resample++) {
+            double sum = 0;
+            for (int i = 0; i < n; i++) sum += samples[r.nextInt(n)];
+            means[resample] = sum / n;
+        }
+        Arrays.sort(means);
+        double tail = (1 - CONFIDENCE) / 2;
+        int low = (int) Math.floor(tail * BOOTSTRAP_RESAMPLES);
+        int high = (int) Math.ceil((1 - tail) * BOOTSTRAP_RESAMPLES) - 1;
+        return new double[]{means[low], means[high]};
+    }
+
+    /** Writes the statistics on one line of space separated values, to be read back by {@link Statistics#decode(String)}. */
+    public String encode() {
+        return mean + " " + median + " " + p90 + " " + p99 + " " + standardDeviation
+                + " " + confidenceLow + " " + confidenceHigh + " " + runs
+                + " " + allocatedBytes + " " + collections + " " + pauseMillis;
+    }
+
+    /** Reads the statistics written by {@link Statistics#encode()}. */
+    public static Statistics decode(String line) {
+        String[] fields = line.trim().split(" ");
+        if (fields.length != 11) throw new IllegalArgumentException("Not encoded statistics: " + line);
+        return new Statistics(Double.parseDouble(fields[0]), Double.parseDouble(fields[1]),
+                Double.parseDouble(fields[2]), Double.parseDouble(fields[3]), Double.parseDouble(fields[4]),
+                Double.parseDouble(fields[5]), Double.parseDouble(fields[6]), Long.parseLong(fields[7]),
+                Double.parseDouble(fields[8]), Double.parseDouble(fields[9]), Double.parseDouble(fields[10]));
+    }
+
+    /** Returns the width of the confidence interval relative to the mean. */
+    public double relativeConfidenceWidth() {
+        return mean == 0 ? 0 : (confidenceHigh - confidenceLow) / mean;
+    }
+}